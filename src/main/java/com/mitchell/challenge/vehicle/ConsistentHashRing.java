@@ -0,0 +1,98 @@
+package com.mitchell.challenge.vehicle;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring mapping vehicle ids to shard names.
+ *
+ * Each shard is placed on the ring at several virtual node positions, and an id belongs to the first shard found
+ * clockwise from the hash of the id. Adding or removing a shard therefore only moves the ids of the ring segments it
+ * takes over or gives up, about one n-th of them, instead of rehashing every id.
+ *
+ * The ring is not thread safe, callers guard it with their own lock.
+ */
+public class ConsistentHashRing {
+
+    // Number of positions each shard occupies on the ring, more positions give a more even spread
+    private final int virtualNodes;
+
+    // Ring positions to the shard placed there
+    private final TreeMap<Integer, String> ring = new TreeMap<>();
+
+    /**
+     * Constructs an empty ring
+     *
+     * @param virtualNodes the number of positions each shard occupies on the ring
+     */
+    public ConsistentHashRing(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * Copies the ring, so a change can be prepared on the copy while the original keeps routing
+     *
+     * @return a new ring with the same shards at the same positions
+     */
+    ConsistentHashRing copy() {
+        ConsistentHashRing copy = new ConsistentHashRing(virtualNodes);
+        copy.ring.putAll(ring);
+        return copy;
+    }
+
+    /**
+     * Places the shard on the ring
+     *
+     * @param shard the name of the shard
+     */
+    void addShard(String shard) {
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(mix(mix(shard.hashCode()) + i * 0x9e3779b9), shard);
+        }
+    }
+
+    /**
+     * Removes every position of the shard from the ring
+     *
+     * @param shard the name of the shard
+     */
+    void removeShard(String shard) {
+        ring.values().removeIf(shard::equals);
+    }
+
+    /**
+     * Gets the shard owning the id
+     *
+     * @param id the id of the vehicle
+     * @return the name of the shard the vehicle belongs to
+     */
+    String shardFor(int id) {
+        SortedMap<Integer, String> tail = ring.tailMap(mix(id));
+        return tail.isEmpty() ? ring.firstEntry().getValue() : tail.get(tail.firstKey());
+    }
+
+    /**
+     * Gets whether any shard is on the ring
+     *
+     * @return whether the ring has no shards
+     */
+    boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    /**
+     * Scrambles the bits of the value so consecutive ids and shard positions spread over the whole ring
+     *
+     * @param value the value to hash
+     * @return the mixed hash, the finalizer of MurmurHash3
+     */
+    private static int mix(int value) {
+        int h = value;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
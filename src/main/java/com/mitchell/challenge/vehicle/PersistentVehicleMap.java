@@ -0,0 +1,308 @@
+package com.mitchell.challenge.vehicle;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Immutable map of vehicles keyed by id, stored as a 32-way trie over the bits of the id.
+ *
+ * Adding or removing a vehicle returns a new map sharing every node with the previous one except the seven nodes on
+ * the path to the id, so a new version costs a few small array copies regardless of the number of vehicles, and any
+ * version can be read by many threads without locking. Iteration visits vehicles in ascending id order, and streams
+ * split along the trie nodes so they can be processed in parallel.
+ */
+public final class PersistentVehicleMap {
+
+    // Number of id bits consumed by each level of the trie
+    private static final int bitsPerLevel = 5;
+
+    // Shift of the top level, the top level only uses the two highest bits of the id
+    private static final int topShift = 30;
+
+    // The empty map every map is built from
+    private static final PersistentVehicleMap empty = new PersistentVehicleMap(null, 0);
+
+    // The root node, inner nodes hold child nodes and nodes at shift 0 hold vehicles, null when empty
+    private final Object[] root;
+
+    // Number of vehicles in the map
+    private final int size;
+
+    private PersistentVehicleMap(Object[] root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Gets the map without any vehicle
+     *
+     * @return the empty map
+     */
+    static PersistentVehicleMap empty() {
+        return empty;
+    }
+
+    /**
+     * Gets the number of vehicles in the map
+     *
+     * @return the vehicle count
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the vehicle with the given id
+     *
+     * @param id the id of the vehicle
+     * @return the vehicle, or null if the map has no vehicle with that id
+     */
+    Vehicle get(int id) {
+        int key = keyOf(id);
+        Object[] node = root;
+        for (int shift = topShift; node != null; shift -= bitsPerLevel) {
+            Object child = node[(key >>> shift) & 31];
+            if (shift == 0) {
+                return (Vehicle) child;
+            }
+            node = (Object[]) child;
+        }
+        return null;
+    }
+
+    /**
+     * Gives a new map with the vehicle added, replacing any vehicle with the same id
+     *
+     * @param vehicle the vehicle to add
+     * @return the new version of the map, this map is left unchanged
+     */
+    PersistentVehicleMap with(Vehicle vehicle) {
+        boolean replaced = get(vehicle.getId()) != null;
+        return new PersistentVehicleMap(set(root, topShift, keyOf(vehicle.getId()), vehicle), replaced ? size : size + 1);
+    }
+
+    /**
+     * Gives a new map without the vehicle with the given id
+     *
+     * @param id the id of the vehicle to remove
+     * @return the new version of the map, or this map if it has no vehicle with that id
+     */
+    PersistentVehicleMap without(int id) {
+        if (get(id) == null) {
+            return this;
+        }
+        return new PersistentVehicleMap(set(root, topShift, keyOf(id), null), size - 1);
+    }
+
+    /**
+     * Calls the action with every vehicle of the map in ascending id order
+     *
+     * @param action the action to call
+     */
+    void forEach(Consumer<Vehicle> action) {
+        if (root != null) {
+            forEach(root, topShift, action);
+        }
+    }
+
+    /**
+     * Gives a stream of the vehicles of the map in ascending id order
+     *
+     * @param parallel whether the stream should be parallel
+     * @return the stream of vehicles
+     */
+    Stream<Vehicle> stream(boolean parallel) {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    /**
+     * Gives a spliterator over the vehicles of the map in ascending id order, splitting along the trie nodes
+     *
+     * @return the spliterator of vehicles
+     */
+    Spliterator<Vehicle> spliterator() {
+        if (root == null) {
+            return Spliterators.emptySpliterator();
+        }
+        return new NodeSpliterator(root, topShift, 0, 32, size);
+    }
+
+    /**
+     * Spliterator over a range of the children of a trie node, split by halving the range or by descending into the
+     * only child left in it
+     */
+    private static final class NodeSpliterator implements Spliterator<Vehicle> {
+        private Object[] node;
+        private int shift;
+        private int index;
+        private int end;
+        private long estimatedSize;
+
+        // Spliterator of the child being traversed by tryAdvance, null between children
+        private NodeSpliterator current;
+
+        NodeSpliterator(Object[] node, int shift, int index, int end, long estimatedSize) {
+            this.node = node;
+            this.shift = shift;
+            this.index = index;
+            this.end = end;
+            this.estimatedSize = estimatedSize;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Vehicle> action) {
+            while (true) {
+                if (current != null) {
+                    if (current.tryAdvance(action)) {
+                        return true;
+                    }
+                    current = null;
+                }
+                if (index >= end) {
+                    return false;
+                }
+                Object child = node[index++];
+                if (child == null) {
+                    continue;
+                }
+                if (shift == 0) {
+                    action.accept((Vehicle) child);
+                    return true;
+                }
+                current = new NodeSpliterator((Object[]) child, shift - bitsPerLevel, 0, 32, 0);
+            }
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Vehicle> action) {
+            if (current != null) {
+                current.forEachRemaining(action);
+                current = null;
+            }
+            for (; index < end; index++) {
+                Object child = node[index];
+                if (child == null) {
+                    continue;
+                }
+                if (shift == 0) {
+                    action.accept((Vehicle) child);
+                } else {
+                    new NodeSpliterator((Object[]) child, shift - bitsPerLevel, 0, 32, 0).forEachRemaining(action);
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<Vehicle> trySplit() {
+            if (current != null) {
+                return null;
+            }
+            while (true) {
+                // Narrow the range to its first and last non-empty children
+                while (index < end && node[index] == null) {
+                    index++;
+                }
+                while (end > index && node[end - 1] == null) {
+                    end--;
+                }
+
+                // Descend when a single child is left, such as below the mostly empty top levels
+                if (end - index == 1 && shift > 0) {
+                    node = (Object[]) node[index];
+                    shift -= bitsPerLevel;
+                    index = 0;
+                    end = 32;
+                    continue;
+                }
+                if (end - index < 2) {
+                    return null;
+                }
+
+                // Split the children in half, sharing the estimate in proportion to the non-empty children
+                int mid = (index + end) >>> 1;
+                int prefixChildren = 0;
+                int children = 0;
+                for (int i = index; i < end; i++) {
+                    if (node[i] != null) {
+                        children++;
+                        if (i < mid) {
+                            prefixChildren++;
+                        }
+                    }
+                }
+                long prefixSize = estimatedSize * prefixChildren / children;
+                estimatedSize -= prefixSize;
+                NodeSpliterator prefix = new NodeSpliterator(node, shift, index, mid, prefixSize);
+                index = mid;
+                return prefix;
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimatedSize;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+        }
+    }
+
+    /**
+     * Copies the path to the key, setting the value at its end and pruning nodes left empty
+     *
+     * @param node the node at the current level, or null if it does not exist yet
+     * @param shift the shift of the current level
+     * @param key the key of the id
+     * @param value the vehicle to set, or null to remove
+     * @return the copy of the node, or null if it became empty
+     */
+    private static Object[] set(Object[] node, int shift, int key, Vehicle value) {
+        Object[] copy = node == null ? new Object[32] : node.clone();
+        int index = (key >>> shift) & 31;
+        copy[index] = shift == 0 ? value : set((Object[]) copy[index], shift - bitsPerLevel, key, value);
+        if (value == null) {
+            for (Object child : copy) {
+                if (child != null) {
+                    return copy;
+                }
+            }
+            return null;
+        }
+        return copy;
+    }
+
+    /**
+     * Visits the vehicles below the node in ascending key order
+     *
+     * @param node the node to visit
+     * @param shift the shift of the node level
+     * @param action the action to call with each vehicle
+     */
+    private static void forEach(Object[] node, int shift, Consumer<Vehicle> action) {
+        for (Object child : node) {
+            if (child == null) {
+                continue;
+            }
+            if (shift == 0) {
+                action.accept((Vehicle) child);
+            } else {
+                forEach((Object[]) child, shift - bitsPerLevel, action);
+            }
+        }
+    }
+
+    /**
+     * Flips the sign bit of the id so that unsigned key order matches signed id order
+     *
+     * @param id the id of the vehicle
+     * @return the trie key of the id
+     */
+    static int keyOf(int id) {
+        return id ^ Integer.MIN_VALUE;
+    }
+}
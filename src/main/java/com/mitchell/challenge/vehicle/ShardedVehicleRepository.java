@@ -0,0 +1,598 @@
+package com.mitchell.challenge.vehicle;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Repository spreading the vehicle table over several H2 in-memory databases, enabled with vehicle.sharding.enabled.
+ *
+ * Operations keyed by id are routed to a single shard through a consistent hash ring, while filter queries are sent to
+ * every shard in parallel and their results merged in id order. Shards can be added or removed at runtime, in which
+ * case only the vehicles whose owner changed on the ring are moved. The moves are prepared on a copy of the ring and
+ * run as batches in transactions, and the new ring is only published once every move succeeded, so a failed rebalancing
+ * leaves the shards as they were.
+ */
+@Primary
+@Repository
+@ConditionalOnProperty(name = "vehicle.sharding.enabled", havingValue = "true")
+public class ShardedVehicleRepository extends VehicleStore {
+
+    // Script creating the vehicle table in each new shard database
+    private static final Resource schema = new ClassPathResource("db/schema.sql");
+
+    // JDBC url of a shard database, completed with the shard name
+    private final String urlPrefix;
+
+    // Options of the configured datasource url, such as ;QUERY_CACHE_SIZE=64, appended to each shard url
+    private final String urlOptions;
+
+    // Credentials of the configured datasource, used for every shard database
+    private final String username;
+    private final String password;
+
+    // Maximum number of pooled connections of each shard
+    private final int poolSize;
+
+    // Ring deciding which shard owns each id, replaced by a copy once a rebalancing succeeded and never changed in place
+    private ConsistentHashRing ring;
+
+    // The shards keyed by name
+    private final Map<String, Shard> shards = new LinkedHashMap<>();
+
+    // Threads running the per-shard part of scatter-gather queries
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "vehicle-shard-query");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Shared for queries and writes, exclusive while shards are added or removed and vehicles are moved
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // The tracer the statements of every shard are recorded in
+    private final VehicleTracer tracer;
+
+    // Sequence used to name the shards
+    private int nextShardNumber;
+
+    /**
+     * A shard database along with the repository running queries against it
+     */
+    private static class Shard {
+        private final HikariDataSource dataSource;
+        private final VehicleRepository repository;
+
+        Shard(HikariDataSource dataSource, VehicleRepository repository) {
+            this.dataSource = dataSource;
+            this.repository = repository;
+        }
+    }
+
+    /**
+     * Constructs the sharded repository and creates its initial shards
+     *
+     * @param shardCount the number of shards to start with
+     * @param virtualNodes the number of ring positions of each shard
+     * @param poolSize the maximum number of pooled connections of each shard
+     * @param urlPrefix the JDBC url of a shard database, completed with the shard name
+     * @param dataSourceUrl the configured datasource url, whose options are applied to every shard
+     * @param username the user name of the configured datasource
+     * @param password the password of the configured datasource
+     * @param tracer the tracer the statements of every shard are recorded in
+     */
+    @Autowired
+    public ShardedVehicleRepository(
+            @Value("${vehicle.sharding.shards:4}") int shardCount,
+            @Value("${vehicle.sharding.virtual-nodes:128}") int virtualNodes,
+            @Value("${vehicle.sharding.pool-size:4}") int poolSize,
+            @Value("${vehicle.sharding.url-prefix:jdbc:h2:mem:vehicledb-}") String urlPrefix,
+            @Value("${spring.datasource.url:}") String dataSourceUrl,
+            @Value("${spring.datasource.username:sa}") String username,
+            @Value("${spring.datasource.password:}") String password,
+            VehicleTracer tracer) {
+        this.urlPrefix = urlPrefix;
+        this.urlOptions = dataSourceUrl.indexOf(';') < 0 ? "" : dataSourceUrl.substring(dataSourceUrl.indexOf(';'));
+        this.username = username;
+        this.password = password;
+        this.poolSize = poolSize;
+        this.tracer = tracer;
+        this.ring = new ConsistentHashRing(virtualNodes);
+        for (int i = 0; i < shardCount; i++) {
+            addShard();
+        }
+    }
+
+    /**
+     * Creates a new shard and moves to it the vehicles it now owns on the ring.
+     *
+     * The moved vehicles are inserted into the new shard in one batch, then deleted from their old shards in batches
+     * whose transactions are nested, before the shard is published on the ring. If any step fails, the new shard is
+     * closed and the vehicles stay on their old shards.
+     *
+     * @return the name of the new shard
+     */
+    String addShard() {
+        lock.writeLock().lock();
+        try {
+            String name = "shard-" + nextShardNumber++;
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("vehicle-" + name);
+            config.setJdbcUrl(urlPrefix + name + urlOptions);
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setMaximumPoolSize(poolSize);
+            config.setMinimumIdle(1);
+            config.setMaxLifetime(0);
+            HikariDataSource dataSource = new HikariDataSource(config);
+            try {
+                Shard shard = new Shard(dataSource, new VehicleRepository(
+                        new TracingJdbcTemplate(dataSource, tracer),
+                        new TransactionTemplate(new DataSourceTransactionManager(dataSource))));
+                new ResourceDatabasePopulator(schema).execute(dataSource);
+
+                ConsistentHashRing newRing = ring.copy();
+                newRing.addShard(name);
+                List<Vehicle> moved = new ArrayList<>();
+                Map<VehicleRepository, Consumer<VehicleRepository>> deletions = new LinkedHashMap<>();
+                for (Shard source : shards.values()) {
+                    List<Integer> movedIds = new ArrayList<>();
+                    for (Vehicle vehicle : source.repository.getAllVehicles()) {
+                        if (newRing.shardFor(vehicle.getId()).equals(name)) {
+                            moved.add(vehicle);
+                            movedIds.add(vehicle.getId());
+                        }
+                    }
+                    if (!movedIds.isEmpty()) {
+                        deletions.put(source.repository, repository -> repository.deleteVehicles(movedIds));
+                    }
+                }
+                shard.repository.createVehicles(moved);
+                runInNestedTransactions(new ArrayList<>(deletions.entrySet()), 0);
+
+                ring = newRing;
+                shards.put(name, shard);
+                return name;
+            } catch (RuntimeException e) {
+                dataSource.close();
+                throw e;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves every vehicle of the shard to its new owner on the ring, then drops the shard.
+     *
+     * The vehicles are inserted into their new shards in batches whose transactions are nested, before the shard is
+     * unlinked from the ring and closed. If any insert fails, no new shard keeps the vehicles and the shard stays.
+     *
+     * @param name the name of the shard to remove
+     */
+    void removeShard(String name) {
+        lock.writeLock().lock();
+        try {
+            if (!shards.containsKey(name) || shards.size() == 1) {
+                throw new IllegalArgumentException("Cannot remove shard " + name);
+            }
+            Shard removed = shards.get(name);
+            ConsistentHashRing newRing = ring.copy();
+            newRing.removeShard(name);
+            Map<String, List<Vehicle>> vehiclesByShard = new LinkedHashMap<>();
+            for (Vehicle vehicle : removed.repository.getAllVehicles()) {
+                vehiclesByShard.computeIfAbsent(newRing.shardFor(vehicle.getId()), target -> new ArrayList<>())
+                        .add(vehicle);
+            }
+            List<Map.Entry<VehicleRepository, Consumer<VehicleRepository>>> inserts = new ArrayList<>();
+            vehiclesByShard.forEach((target, vehicles) -> inserts.add(new AbstractMap.SimpleImmutableEntry<>(
+                    shards.get(target).repository, repository -> repository.createVehicles(vehicles))));
+            runInNestedTransactions(inserts, 0);
+
+            ring = newRing;
+            shards.remove(name);
+            removed.dataSource.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs each operation against its shard repository, each inside the transaction of the previous ones, so a failure
+     * on any shard rolls back every shard.
+     *
+     * The transactions commit from the last shard to the first once every operation succeeded. Only a failure of the
+     * commit itself can leave some shards changed and others not.
+     *
+     * @param operations the operations to run, each with the shard repository it runs against
+     * @param index the position of the next operation to run
+     */
+    private static void runInNestedTransactions(
+            List<Map.Entry<VehicleRepository, Consumer<VehicleRepository>>> operations, int index) {
+        if (index == operations.size()) {
+            return;
+        }
+        VehicleRepository repository = operations.get(index).getKey();
+        repository.inTransaction(() -> {
+            operations.get(index).getValue().accept(repository);
+            runInNestedTransactions(operations, index + 1);
+        });
+    }
+
+    /**
+     * Gets the number of vehicles stored in each shard
+     *
+     * @return the vehicle count keyed by shard name
+     */
+    Map<String, Integer> shardSizes() {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> sizes = new LinkedHashMap<>();
+            shards.forEach((name, shard) -> sizes.put(name, shard.repository.getAllVehicles().size()));
+            return sizes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the query threads and the connection pools of every shard
+     */
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+        shards.values().forEach(shard -> shard.dataSource.close());
+    }
+
+    @Override
+    List<Vehicle> getAllVehicles() {
+        return sortedById(scatter(VehicleRepository::getAllVehicles));
+    }
+
+    @Override
+    Vehicle getVehicleById(Integer id) {
+        return route(id, repository -> repository.getVehicleById(id));
+    }
+
+    @Override
+    List<Vehicle> getVehiclesByYear(Integer year) {
+        return sortedById(scatter(repository -> repository.getVehiclesByYear(year)));
+    }
+
+    @Override
+    List<Vehicle> getVehiclesByMake(String make) {
+        return sortedById(scatter(repository -> repository.getVehiclesByMake(make)));
+    }
+
+    @Override
+    List<Vehicle> getVehiclesByModel(String model) {
+        return sortedById(scatter(repository -> repository.getVehiclesByModel(model)));
+    }
+
+    @Override
+    List<Vehicle> getVehiclesByIds(Collection<Integer> ids) {
+        lock.readLock().lock();
+        try {
+            Map<String, List<Integer>> idsByShard = new HashMap<>();
+            for (Integer id : ids) {
+                idsByShard.computeIfAbsent(ring.shardFor(id), name -> new ArrayList<>()).add(id);
+            }
+            List<Future<List<Vehicle>>> futures = new ArrayList<>();
+            idsByShard.forEach((name, shardIds) ->
+                    futures.add(executor.submit(() -> shards.get(name).repository.getVehiclesByIds(shardIds))));
+            return sortedById(gather(futures));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    List<Vehicle> getVehiclesMatchingAll(Integer year, String make, String model) {
+        return sortedById(scatter(repository -> repository.getVehiclesMatchingAll(year, make, model)));
+    }
+
+    /**
+     * Runs the projection on every shard and merges the rows in the order a single database would return them.
+     *
+     * The columns needed to order the merge are selected along with the requested ones, and dropped after the merge.
+     */
+    @Override
+    List<Map<String, Object>> getVehicleFields(
+            List<String> fields, Integer year, String make, String model, String sort, boolean descending) {
+        Set<String> selectedFields = new LinkedHashSet<>(fields);
+        selectedFields.add("id");
+        if (sort != null) {
+            selectedFields.add(sort);
+        } else {
+            if (year != null) {
+                selectedFields.add("year");
+            }
+            if (make != null) {
+                selectedFields.add("make");
+            }
+            if (model != null) {
+                selectedFields.add("model");
+            }
+        }
+        List<String> selected = new ArrayList<>(selectedFields);
+        List<Map<String, Object>> rows = scatter(repository ->
+                repository.getVehicleFields(selected, year, make, model, sort, descending));
+
+        Comparator<Map<String, Object>> byId = Comparator.comparing(row -> (Integer) row.get("id"));
+        if (sort != null) {
+            @SuppressWarnings("unchecked")
+            Comparator<Map<String, Object>> comparator = Comparator
+                    .comparing((Map<String, Object> row) -> (Comparable<Object>) row.get(sort))
+                    .thenComparing(byId);
+            rows.sort(descending ? comparator.reversed() : comparator);
+        } else {
+            rows.sort(Comparator.comparingInt((Map<String, Object> row) -> {
+                if (year != null && year.equals(row.get("year"))) {
+                    return 0;
+                }
+                return make != null && make.equals(row.get("make")) ? 1 : 2;
+            }).thenComparing(byId));
+        }
+
+        if (selected.size() == fields.size()) {
+            return rows;
+        }
+        List<Map<String, Object>> projected = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Map<String, Object> projectedRow = new LinkedHashMap<>(fields.size() * 2);
+            fields.forEach(field -> projectedRow.put(field, row.get(field)));
+            projected.add(projectedRow);
+        }
+        return projected;
+    }
+
+    @Override
+    Map<String, Object> getVehicleFieldsById(List<String> fields, Integer id) {
+        return route(id, repository -> repository.getVehicleFieldsById(fields, id));
+    }
+
+    @Override
+    int createVehicle(Vehicle vehicle) {
+        return route(vehicle.getId(), repository -> repository.createVehicle(vehicle));
+    }
+
+    @Override
+    int updateVehicleYear(Integer id, Integer year) {
+        return route(id, repository -> repository.updateVehicleYear(id, year));
+    }
+
+    @Override
+    int updateVehicleMake(Integer id, String make) {
+        return route(id, repository -> repository.updateVehicleMake(id, make));
+    }
+
+    @Override
+    int updateVehicleModel(Integer id, String model) {
+        return route(id, repository -> repository.updateVehicleModel(id, model));
+    }
+
+    /**
+     * Applies the partial updates as one batched transaction per shard, so the batch is atomic within a shard only
+     *
+     * @param vehicles the vehicles holding the id to update along with the values to modify
+     * @return the number of rows updated by each statement, in the order of the given vehicles
+     */
+    @Override
+    int[] updateVehicles(List<Vehicle> vehicles) {
+        return batchByShard(vehicles, VehicleRepository::updateVehicles);
+    }
+
+    /**
+     * Inserts the vehicles as one batched transaction per shard, so the batch is atomic within a shard only
+     *
+     * @param vehicles the vehicles to insert
+     * @return the number of rows inserted by each statement, in the order of the given vehicles
+     */
+    @Override
+    int[] createVehicles(List<Vehicle> vehicles) {
+        return batchByShard(vehicles, VehicleRepository::createVehicles);
+    }
+
+    @Override
+    boolean isIdTaken(int id) {
+        return route(id, repository -> repository.isIdTaken(id));
+    }
+
+    @Override
+    int deleteVehicle(Integer id) {
+        return route(id, repository -> repository.deleteVehicle(id));
+    }
+
+    /**
+     * Splits the new vehicles by owning shard, then replaces the vehicles of every shard in transactions nested inside
+     * each other, so a failing insert on any shard rolls back every shard
+     *
+     * The transactions commit from the last shard to the first once every insert succeeded. Only a failure of the
+     * commit itself can leave some shards replaced and others not.
+     *
+     * @param source the function passing the new vehicles, in batches, to the consumer it is given
+     */
+    @Override
+    void replaceAllVehicles(Consumer<Consumer<List<Vehicle>>> source) {
+        lock.readLock().lock();
+        try {
+            Map<String, List<Vehicle>> vehiclesByShard = new HashMap<>();
+            source.accept(batch -> batch.forEach(vehicle -> vehiclesByShard
+                    .computeIfAbsent(ring.shardFor(vehicle.getId()), name -> new ArrayList<>())
+                    .add(vehicle)));
+            replaceShardVehicles(new ArrayList<>(shards.keySet()), 0, vehiclesByShard);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the vehicles of a shard, then of every following shard from inside its transaction
+     *
+     * @param names the names of every shard
+     * @param index the position of the shard to replace in the names
+     * @param vehiclesByShard the new vehicles keyed by owning shard
+     */
+    private void replaceShardVehicles(List<String> names, int index, Map<String, List<Vehicle>> vehiclesByShard) {
+        if (index == names.size()) {
+            return;
+        }
+        String name = names.get(index);
+        shards.get(name).repository.replaceAllVehicles(batches -> {
+            batches.accept(vehiclesByShard.getOrDefault(name, Collections.emptyList()));
+            replaceShardVehicles(names, index + 1, vehiclesByShard);
+        });
+    }
+
+    /**
+     * Calls the action with every vehicle of every shard in id order, the shards being merged in memory
+     *
+     * @param action the action to call with each vehicle
+     */
+    @Override
+    void forEachVehicle(Consumer<Vehicle> action) {
+        getAllVehicles().forEach(action);
+    }
+
+    /**
+     * Counts the matching vehicles of every shard against the cap, then deletes them in one transaction per shard, so
+     * the deletion is atomic within a shard only
+     *
+     * @param year the year of the vehicles to delete, or null
+     * @param make the make of the vehicles to delete, or null
+     * @param model the model of the vehicles to delete, or null
+     * @param maxDeleted the most vehicles that may be deleted
+     * @return the vehicles deleted in id order, or null if more than the cap matched and nothing was deleted
+     */
+    @Override
+    List<Vehicle> deleteVehiclesMatchingAll(Integer year, String make, String model, int maxDeleted) {
+        if (getVehiclesMatchingAll(year, make, model).size() > maxDeleted) {
+            return null;
+        }
+        return sortedById(scatter(repository ->
+                repository.deleteVehiclesMatchingAll(year, make, model, Integer.MAX_VALUE)));
+    }
+
+    /**
+     * Splits the vehicles by owning shard and runs the batch operation once per shard
+     *
+     * @param vehicles the vehicles of the batch
+     * @param batch the batch operation to run against each shard repository with the vehicles it owns
+     * @return the result of each statement, in the order of the given vehicles
+     */
+    private int[] batchByShard(List<Vehicle> vehicles, BiFunction<VehicleRepository, List<Vehicle>, int[]> batch) {
+        lock.readLock().lock();
+        try {
+            Map<String, List<Integer>> indexesByShard = new HashMap<>();
+            for (int i = 0; i < vehicles.size(); i++) {
+                indexesByShard.computeIfAbsent(ring.shardFor(vehicles.get(i).getId()), name -> new ArrayList<>()).add(i);
+            }
+            int[] results = new int[vehicles.size()];
+            indexesByShard.forEach((name, indexes) -> {
+                List<Vehicle> shardVehicles = new ArrayList<>(indexes.size());
+                indexes.forEach(index -> shardVehicles.add(vehicles.get(index)));
+                int[] shardResults = batch.apply(shards.get(name).repository, shardVehicles);
+                for (int i = 0; i < indexes.size(); i++) {
+                    results[indexes.get(i)] = shardResults[i];
+                }
+            });
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs the operation against the shard owning the id
+     *
+     * @param id the id of the vehicle
+     * @param operation the operation to run against the shard repository
+     * @param <T> the result type of the operation
+     * @return the result of the operation
+     */
+    private <T> T route(int id, Function<VehicleRepository, T> operation) {
+        lock.readLock().lock();
+        try {
+            return operation.apply(shards.get(ring.shardFor(id)).repository);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs the query against every shard in parallel and concatenates the results
+     *
+     * @param query the query to run against each shard repository
+     * @param <T> the element type of the query results
+     * @return the results of every shard
+     */
+    private <T> List<T> scatter(Function<VehicleRepository, List<T>> query) {
+        lock.readLock().lock();
+        try {
+            List<Future<List<T>>> futures = new ArrayList<>(shards.size());
+            for (Shard shard : shards.values()) {
+                futures.add(executor.submit(() -> query.apply(shard.repository)));
+            }
+            return gather(futures);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Waits for every shard query and concatenates their results, rethrowing the failure of any of them
+     *
+     * @param futures the pending shard queries
+     * @param <T> the element type of the query results
+     * @return the results of every shard
+     */
+    private static <T> List<T> gather(List<Future<List<T>>> futures) {
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<List<T>> future : futures) {
+                results.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Sorts merged shard results by id, the order a single database returns them in
+     *
+     * @param vehicles the merged vehicles
+     * @return the same list sorted by id
+     */
+    private static List<Vehicle> sortedById(List<Vehicle> vehicles) {
+        vehicles.sort(Comparator.comparing(Vehicle::getId));
+        return vehicles;
+    }
+}
@@ -0,0 +1,90 @@
+package com.mitchell.challenge.vehicle;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.*;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.Collection;
+
+/**
+ * JdbcTemplate recording a span for every statement run by the repository, tagged with its SQL and row count.
+ *
+ * Replaces the auto-configured JdbcTemplate. Every query, update and batch of the template goes through one of the two
+ * execute methods overridden here, so the repository needs no tracing code of its own.
+ */
+@Component
+public class TracingJdbcTemplate extends JdbcTemplate {
+
+    // The tracer the statement spans are recorded in
+    private final VehicleTracer tracer;
+
+    /**
+     * Constructs the template over the application data source
+     *
+     * @param dataSource the data source dependency injected in
+     * @param tracer the tracer dependency injected in
+     */
+    @Autowired
+    public TracingJdbcTemplate(DataSource dataSource, VehicleTracer tracer) {
+        super(dataSource);
+        this.tracer = tracer;
+    }
+
+    @Override
+    public <T> T execute(PreparedStatementCreator creator, PreparedStatementCallback<T> action)
+            throws DataAccessException {
+        if (!tracer.isTracing()) {
+            return super.execute(creator, action);
+        }
+        try (VehicleTracer.Span span = tracer.span("sql").tag("sql", sqlOf(creator))) {
+            T result = super.execute(creator, action);
+            span.tag("rows", rowsOf(result));
+            return result;
+        }
+    }
+
+    @Override
+    public <T> T execute(StatementCallback<T> action) throws DataAccessException {
+        if (!tracer.isTracing()) {
+            return super.execute(action);
+        }
+        try (VehicleTracer.Span span = tracer.span("sql").tag("sql", sqlOf(action))) {
+            T result = super.execute(action);
+            span.tag("rows", rowsOf(result));
+            return result;
+        }
+    }
+
+    /**
+     * Gets the SQL of a statement creator or callback
+     *
+     * @param statement the creator or callback of the statement
+     * @return the SQL, or null if it does not expose it
+     */
+    private static String sqlOf(Object statement) {
+        return statement instanceof SqlProvider ? ((SqlProvider) statement).getSql() : null;
+    }
+
+    /**
+     * Gets the row count of a statement result
+     *
+     * @param result the result of the statement
+     * @return the rows returned by a query, updated by an update or a batch, or null if the result does not tell
+     */
+    private static Integer rowsOf(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        } else if (result instanceof Integer) {
+            return (Integer) result;
+        } else if (result instanceof int[]) {
+            int rows = 0;
+            for (int count : (int[]) result) {
+                rows += Math.max(count, 0);
+            }
+            return rows;
+        }
+        return null;
+    }
+}
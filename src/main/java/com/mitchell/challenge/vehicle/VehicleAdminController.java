@@ -0,0 +1,60 @@
+package com.mitchell.challenge.vehicle;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * The Controller class for the administrative endpoints of the vehicles back-end application.
+ *
+ * The parent route for all the endpoints in this controller is /admin
+ */
+@RestController
+@RequestMapping("admin")
+public class VehicleAdminController {
+
+    // The reference to the service object of vehicles application
+    private final VehicleService vehicleService;
+
+    /**
+     * Constructor for the admin controller class, initializing access to the vehicle service
+     *
+     * @param vehicleService the vehicle service dependency injected in
+     */
+    @Autowired
+    public VehicleAdminController(VehicleService vehicleService) {
+        this.vehicleService = vehicleService;
+    }
+
+    /**
+     * Get route for the materialized views of GET /vehicles filter combinations, and the combinations requested often
+     * enough to be worth materializing
+     *
+     * @return the vehicle and request counts of every view, and the suggested combinations with their request share
+     */
+    @GetMapping("materialized-views")
+    public VehicleMaterializedViews.Report getMaterializedViews() {
+        return vehicleService.getMaterializedViews();
+    }
+
+    /**
+     * Post route for writing every vehicle to a binary snapshot file in the snapshot directory
+     *
+     * @param name the name of the snapshot, replaced if it already exists
+     * @return the number of vehicles and the size of the snapshot written
+     */
+    @PostMapping("snapshots/{name}")
+    public VehicleSnapshotResult exportSnapshot(@PathVariable String name) {
+        return vehicleService.exportSnapshot(name);
+    }
+
+    /**
+     * Post route for replacing every vehicle with the vehicles of a snapshot file
+     *
+     * @param name the name of the snapshot to restore
+     * @return the number of vehicles and the size of the snapshot restored
+     */
+    @PostMapping("snapshots/{name}/restore")
+    public VehicleSnapshotResult restoreSnapshot(@PathVariable String name) {
+        return vehicleService.restoreSnapshot(name);
+    }
+}
@@ -0,0 +1,270 @@
+package com.mitchell.challenge.vehicle;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control of the vehicle routes, enabled with vehicle.admission.enabled.
+ *
+ * Runs before the controller, so rejected requests never reach the service or the database. Each client, identified
+ * by its remote address, draws from its own token bucket, and each endpoint class has
+ * a cap on the requests it runs at once. Over the limits, requests are rejected with 429 Too Many Requests and a
+ * Retry-After header instead of queuing for a database connection. Rejections are counted in the
+ * vehicle.admission.rejected metric, tagged by endpoint class and reason.
+ *
+ * The X-Client-Id header is only trusted from the proxies listed in vehicle.admission.trusted-proxies, so clients
+ * cannot escape their limit by sending a new id with each request. The buckets are kept in least recently used order
+ * and bounded by vehicle.admission.max-clients, so a new client evicts the oldest bucket in constant time.
+ */
+@Component
+@ConditionalOnProperty(name = "vehicle.admission.enabled", havingValue = "true")
+public class VehicleAdmissionControl implements HandlerInterceptor, WebMvcConfigurer {
+
+    // The header trusted proxies may identify the client behind them with
+    static final String clientIdHeader = "X-Client-Id";
+
+    // Error strings for the rejected requests
+    private final String rateLimitedString = "Too many requests from this client, retry later";
+    private final String overloadedString = "Too many concurrent %s requests, retry later";
+
+    // The request attribute holding the permit acquired for the request
+    private static final String permitAttribute = VehicleAdmissionControl.class.getName() + ".permit";
+
+    /**
+     * The classes of vehicle routes, each with its own concurrency cap
+     */
+    enum EndpointClass {
+        // Unfiltered or filtered listings, search and stats, which scan many rows
+        SCAN,
+        // Single vehicle reads and multi-get lookups by id
+        POINT,
+        // Creates, updates and deletes
+        WRITE
+    }
+
+    // The token bucket of each client, least recently used first, guarded by its own lock
+    private final Map<String, TokenBucket> buckets;
+
+    // The remote addresses whose client id header is trusted
+    private final Set<String> trustedProxies;
+
+    // The permits of each endpoint class
+    private final Map<EndpointClass, Semaphore> permits = new EnumMap<>(EndpointClass.class);
+
+    // The rejection counters of each endpoint class, for the rate and concurrency limits
+    private final Map<EndpointClass, Counter> rateRejections = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, Counter> concurrencyRejections = new EnumMap<>(EndpointClass.class);
+
+    // Tokens added to each bucket per second
+    private final double ratePerSecond;
+
+    // Capacity of each bucket, the burst a client may send after being idle
+    private final int burst;
+
+    /**
+     * Constructs the admission control with its limits
+     *
+     * @param ratePerSecond the sustained requests per second allowed per client
+     * @param burst the number of requests a client may send at once after being idle
+     * @param maxClients the number of client buckets kept, the least recently used is dropped beyond it
+     * @param trustedProxies the comma separated remote addresses whose client id header is trusted
+     * @param scanConcurrency the maximum number of scan requests running at once
+     * @param pointConcurrency the maximum number of point requests running at once
+     * @param writeConcurrency the maximum number of write requests running at once
+     * @param meterRegistry the registry the rejection counters are registered in
+     */
+    @Autowired
+    public VehicleAdmissionControl(
+            @Value("${vehicle.admission.rate-per-second:50}") double ratePerSecond,
+            @Value("${vehicle.admission.burst:100}") int burst,
+            @Value("${vehicle.admission.max-clients:10000}") int maxClients,
+            @Value("${vehicle.admission.trusted-proxies:}") String trustedProxies,
+            @Value("${vehicle.admission.scan-concurrency:4}") int scanConcurrency,
+            @Value("${vehicle.admission.point-concurrency:16}") int pointConcurrency,
+            @Value("${vehicle.admission.write-concurrency:4}") int writeConcurrency,
+            MeterRegistry meterRegistry) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.buckets = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > maxClients;
+            }
+        };
+        this.trustedProxies = new HashSet<>();
+        for (String proxy : trustedProxies.split(",")) {
+            if (!proxy.trim().isEmpty()) {
+                this.trustedProxies.add(proxy.trim());
+            }
+        }
+        permits.put(EndpointClass.SCAN, new Semaphore(scanConcurrency));
+        permits.put(EndpointClass.POINT, new Semaphore(pointConcurrency));
+        permits.put(EndpointClass.WRITE, new Semaphore(writeConcurrency));
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            String endpoint = endpointClass.name().toLowerCase();
+            rateRejections.put(endpointClass, meterRegistry.counter("vehicle.admission.rejected",
+                    "endpoint", endpoint, "reason", "rate"));
+            concurrencyRejections.put(endpointClass, meterRegistry.counter("vehicle.admission.rejected",
+                    "endpoint", endpoint, "reason", "concurrency"));
+        }
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).addPathPatterns("/vehicles", "/vehicles/**");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        EndpointClass endpointClass = classify(request);
+
+        if (!bucketOf(clientKey(request)).tryAcquire()) {
+            rateRejections.get(endpointClass).increment();
+            response.setHeader("Retry-After", String.valueOf((long) Math.ceil(1 / ratePerSecond)));
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, rateLimitedString);
+        }
+
+        Semaphore semaphore = permits.get(endpointClass);
+        if (!semaphore.tryAcquire()) {
+            concurrencyRejections.get(endpointClass).increment();
+            response.setHeader("Retry-After", "1");
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                    String.format(overloadedString, endpointClass.name().toLowerCase()));
+        }
+        request.setAttribute(permitAttribute, semaphore);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object semaphore = request.getAttribute(permitAttribute);
+        if (semaphore != null) {
+            request.removeAttribute(permitAttribute);
+            ((Semaphore) semaphore).release();
+        }
+    }
+
+    /**
+     * Classifies the request by the route it targets
+     *
+     * @param request the incoming request
+     * @return the endpoint class of the route
+     */
+    static EndpointClass classify(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        String method = request.getMethod();
+        if ("GET".equals(method)) {
+            if (path.equals("/vehicles") || path.equals("/vehicles/search") || path.equals("/vehicles/stats")) {
+                return EndpointClass.SCAN;
+            }
+            return EndpointClass.POINT;
+        }
+        if ("POST".equals(method) && path.equals("/vehicles/lookup")) {
+            return EndpointClass.POINT;
+        }
+        return EndpointClass.WRITE;
+    }
+
+    /**
+     * Gets the key identifying the client of the request
+     *
+     * @param request the incoming request
+     * @return the X-Client-Id header if present and sent by a trusted proxy, else the remote address
+     */
+    private String clientKey(HttpServletRequest request) {
+        String remoteAddress = request.getRemoteAddr();
+        if (trustedProxies.contains(remoteAddress)) {
+            String clientId = request.getHeader(clientIdHeader);
+            if (clientId != null && !clientId.isEmpty()) {
+                return clientId;
+            }
+        }
+        return remoteAddress;
+    }
+
+    /**
+     * Gets the token bucket of the client, creating a full one for new clients and dropping the least recently used
+     * bucket once there are more than the maximum number of clients
+     *
+     * @param clientKey the key of the client
+     * @return the bucket of the client
+     */
+    private TokenBucket bucketOf(String clientKey) {
+        synchronized (buckets) {
+            return buckets.computeIfAbsent(clientKey, key -> new TokenBucket(burst, ratePerSecond));
+        }
+    }
+
+    /**
+     * Token bucket refilled continuously from the elapsed time, starting full
+     */
+    static final class TokenBucket {
+
+        // The maximum number of tokens
+        private final double capacity;
+
+        // Tokens added per nanosecond
+        private final double tokensPerNano;
+
+        // The tokens currently available
+        private double tokens;
+
+        // The time of the last refill, in nanoseconds
+        private long refilledAt;
+
+        /**
+         * Constructs a full bucket
+         *
+         * @param capacity the maximum number of tokens
+         * @param ratePerSecond the tokens added per second
+         */
+        TokenBucket(double capacity, double ratePerSecond) {
+            this.capacity = capacity;
+            this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.tokens = capacity;
+            this.refilledAt = System.nanoTime();
+        }
+
+        /**
+         * Takes a token if one is available
+         *
+         * @return true if a token was taken, false if the bucket is empty
+         */
+        synchronized boolean tryAcquire() {
+            refill();
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        /**
+         * Adds the tokens earned since the last refill, up to the capacity
+         */
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+        }
+    }
+}
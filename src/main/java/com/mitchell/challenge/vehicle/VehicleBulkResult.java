@@ -0,0 +1,28 @@
+package com.mitchell.challenge.vehicle;
+
+/**
+ * Response body of the bulk update and bulk delete routes, reporting how many vehicles the operation touched.
+ */
+public class VehicleBulkResult {
+
+    // The number of vehicles updated or deleted by the bulk operation
+    private final int affected;
+
+    /**
+     * Constructs the result of a bulk operation
+     *
+     * @param affected the number of vehicles updated or deleted
+     */
+    public VehicleBulkResult(int affected) {
+        this.affected = affected;
+    }
+
+    /**
+     * Gets the number of vehicles the bulk operation touched
+     *
+     * @return the affected vehicle count
+     */
+    public int getAffected() {
+        return affected;
+    }
+}
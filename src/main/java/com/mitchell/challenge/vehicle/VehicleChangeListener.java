@@ -0,0 +1,43 @@
+package com.mitchell.challenge.vehicle;
+
+import java.util.Collection;
+
+/**
+ * Listener notified by the vehicle service after each successful write to the database.
+ *
+ * Implemented by the in-memory structures derived from the vehicle table so they can be maintained incrementally
+ * instead of being recomputed from the database on every request. The service serializes the writes of each
+ * vehicle, so listeners observe the changes of a vehicle in the same order as the database, but writes of different
+ * vehicles are notified concurrently and listeners must be thread-safe. Loads are notified while no other write runs.
+ */
+public interface VehicleChangeListener {
+
+    /**
+     * Called when the full content of the vehicle table is (re)loaded, such as on startup
+     *
+     * @param vehicles every vehicle currently in the database
+     */
+    void vehiclesLoaded(Collection<Vehicle> vehicles);
+
+    /**
+     * Called after a vehicle is inserted in the database
+     *
+     * @param vehicle the created vehicle
+     */
+    void vehicleCreated(Vehicle vehicle);
+
+    /**
+     * Called after a vehicle is modified in the database
+     *
+     * @param previous the vehicle values before the update
+     * @param updated the vehicle values after the update
+     */
+    void vehicleUpdated(Vehicle previous, Vehicle updated);
+
+    /**
+     * Called after a vehicle is removed from the database
+     *
+     * @param vehicle the vehicle values before the deletion
+     */
+    void vehicleDeleted(Vehicle vehicle);
+}
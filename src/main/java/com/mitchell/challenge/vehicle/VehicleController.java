@@ -35,27 +35,78 @@ public class VehicleController {
      * @param year the year restriction applied to the get request
      * @param make the make restriction applied to the get request
      * @param model the model restriction applied to the get request
+     * @param sort the field to sort the vehicles by, one of id, year, make and model
+     * @param order the sort order, asc or desc, ascending by default
+     * @param fields the comma separated fields to return for each vehicle, all fields if absent
      * @return the list of all vehicles in the database, or list of filtered vehicles if request params exist
      */
     @GetMapping
-    public List<Vehicle> getVehicles(
+    public List<?> getVehicles(
             @RequestParam(required = false) Integer year,
             @RequestParam(required = false) String make,
-            @RequestParam(required = false) String model) {
-        return vehicleService.getVehicles(year, make, model);
+            @RequestParam(required = false) String model,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String order,
+            @RequestParam(required = false) String fields) {
+        if (fields != null) {
+            return vehicleService.getVehicleFields(year, make, model, sort, order, fields);
+        }
+        return vehicleService.getVehicles(year, make, model, sort, order);
+    }
+
+    /**
+     * Get route for searching vehicles by the prefix of their make or model, used for autocomplete.
+     *
+     * Falls back to approximate matches when not enough vehicles match the prefix.
+     * @param q the text to search for
+     * @param limit the maximum number of vehicles to return, 10 by default
+     * @return the best matching vehicles
+     */
+    @GetMapping("search")
+    public List<Vehicle> searchVehicles(
+            @RequestParam String q,
+            @RequestParam(required = false, defaultValue = "10") Integer limit) {
+        return vehicleService.searchVehicles(q, limit);
+    }
+
+    /**
+     * Get route for vehicle counts grouped by year, make and/or model.
+     *
+     * Served from counters maintained on every write, so the cost depends on the number of groups, not vehicles.
+     * @param groupBy the comma separated fields to group by, only the total is returned if absent
+     * @return the total vehicle count along with the count of each group
+     */
+    @GetMapping("stats")
+    public VehicleStatistics.Report getVehicleStats(@RequestParam(required = false) String groupBy) {
+        return vehicleService.getVehicleStats(groupBy);
     }
 
     /**
      * Get request for one specific vehicle based on its id.
      *
      * @param id the id of the vehicle to get
+     * @param fields the comma separated fields to return, all fields if absent
      * @return the specific matching vehicle
      */
     @GetMapping("{id}")
-    public Vehicle getVehicleById(@PathVariable Integer id) {
+    public Object getVehicleById(@PathVariable Integer id, @RequestParam(required = false) String fields) {
+        if (fields != null) {
+            return vehicleService.getVehicleFieldsById(id, fields);
+        }
         return vehicleService.getVehicleById(id);
     }
 
+    /**
+     * Post request to get many vehicles by id in one round trip
+     *
+     * @param ids the request body, the list of ids of the vehicles to get
+     * @return the vehicles found along with the ids that did not match any vehicle
+     */
+    @PostMapping("lookup")
+    public VehicleLookupResult lookupVehicles(@RequestBody List<Integer> ids) {
+        return vehicleService.lookupVehicles(ids);
+    }
+
     /**
      * Post request to create vehicle in database
      *
@@ -76,6 +127,34 @@ public class VehicleController {
         vehicleService.updateVehicle(vehicle);
     }
 
+    /**
+     * Put request to update many vehicles at once in a single batched transaction
+     *
+     * @param vehicles the request body, a list of vehicles each holding the id to modify along with values to modify
+     * @return the number of vehicles updated
+     */
+    @PutMapping("batch")
+    public VehicleBulkResult updateVehicles(@RequestBody List<Vehicle> vehicles) {
+        return vehicleService.updateVehicles(vehicles);
+    }
+
+    /**
+     * Delete request for removing every vehicle matching all of the request params from the database
+     *
+     * Unlike the get route, the request params are combined, only vehicles matching every one of them are deleted.
+     * @param year the year of the vehicles to delete
+     * @param make the make of the vehicles to delete
+     * @param model the model of the vehicles to delete
+     * @return the number of vehicles deleted
+     */
+    @DeleteMapping
+    public VehicleBulkResult deleteVehicles(
+            @RequestParam(required = false) Integer year,
+            @RequestParam(required = false) String make,
+            @RequestParam(required = false) String model) {
+        return vehicleService.deleteVehicles(year, make, model);
+    }
+
     /**
      * Delete request for removing a specific vehicle from the database
      *
@@ -0,0 +1,56 @@
+package com.mitchell.challenge.vehicle;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ids of every vehicle kept in memory from the change notifications, enabled along with write-behind mode.
+ *
+ * Lets a write-behind create check that its id is free without a database round trip before it is acknowledged. The
+ * ids of vehicles waiting to be inserted are included, as the listeners are told of a create when it is acknowledged,
+ * and a vehicle the write-behind buffer could not insert is reported as deleted, which frees its id again.
+ */
+@Component
+@ConditionalOnProperty(name = "vehicle.write-behind.enabled", havingValue = "true")
+public class VehicleIdIndex implements VehicleChangeListener {
+
+    // The ids of the vehicles in the database or waiting to be inserted
+    private final Set<Integer> ids = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void vehiclesLoaded(Collection<Vehicle> vehicles) {
+        ids.clear();
+        for (Vehicle vehicle : vehicles) {
+            ids.add(vehicle.getId());
+        }
+    }
+
+    @Override
+    public void vehicleCreated(Vehicle vehicle) {
+        ids.add(vehicle.getId());
+    }
+
+    @Override
+    public void vehicleUpdated(Vehicle previous, Vehicle updated) {
+        // Updates never change the id of a vehicle
+    }
+
+    @Override
+    public void vehicleDeleted(Vehicle vehicle) {
+        ids.remove(vehicle.getId());
+    }
+
+    /**
+     * Checks if the id is taken by a vehicle in the database or waiting to be inserted
+     *
+     * @param id the id to check
+     * @return whether the id is taken
+     */
+    boolean contains(int id) {
+        return ids.contains(id);
+    }
+}
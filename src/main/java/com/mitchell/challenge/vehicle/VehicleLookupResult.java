@@ -0,0 +1,44 @@
+package com.mitchell.challenge.vehicle;
+
+import java.util.List;
+
+/**
+ * Response body of the multi-get route, holding the vehicles found and the ids which did not match any vehicle.
+ */
+public class VehicleLookupResult {
+
+    // The vehicles found, in the order their ids were requested
+    private final List<Vehicle> found;
+
+    // The requested ids without a matching vehicle, in the order they were requested
+    private final List<Integer> notFound;
+
+    /**
+     * Constructs the result of a multi-get
+     *
+     * @param found the vehicles found
+     * @param notFound the ids without a matching vehicle
+     */
+    public VehicleLookupResult(List<Vehicle> found, List<Integer> notFound) {
+        this.found = found;
+        this.notFound = notFound;
+    }
+
+    /**
+     * Gets the vehicles found
+     *
+     * @return the vehicles found, in requested order
+     */
+    public List<Vehicle> getFound() {
+        return found;
+    }
+
+    /**
+     * Gets the ids which did not match any vehicle
+     *
+     * @return the ids not found, in requested order
+     */
+    public List<Integer> getNotFound() {
+        return notFound;
+    }
+}
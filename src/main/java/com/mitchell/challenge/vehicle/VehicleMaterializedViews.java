@@ -0,0 +1,436 @@
+package com.mitchell.challenge.vehicle;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Materialized result sets of the hot filter combinations of GET /vehicles, declared with vehicle.materialized.views.
+ *
+ * Each view keeps the vehicles matching its filter in the order the filter returns them, grouped by the first of the
+ * year, make and model filters they match and in id order within a group, and is updated through the service change
+ * notifications so only the vehicles a write touches are moved. The list served is built on the first read after a
+ * write to the view and shared by every read until the next one.
+ *
+ * Building that list copies every vehicle of the view, so the unfiltered view (declared as {@code *}) copies the whole
+ * table on the first read after each write. It is only worth declaring for small or read-mostly tables, on a table
+ * written to often the copies cost more than the queries they save.
+ *
+ * Every filter combination requested is also counted, so the combinations worth materializing can be suggested from
+ * their share of the requests. At most vehicle.materialized.max-tracked-filters combinations are counted, later
+ * combinations are left out of the suggestions.
+ */
+@Component
+public class VehicleMaterializedViews implements VehicleChangeListener {
+
+    // The views keyed by their filter, fixed at startup
+    private final Map<Filter, View> views = new LinkedHashMap<>();
+
+    // The number of requests of each filter combination counted
+    private final ConcurrentMap<Filter, LongAdder> requestCounts = new ConcurrentHashMap<>();
+
+    // The number of requests of any filter combination
+    private final LongAdder requests = new LongAdder();
+
+    // The maximum number of filter combinations counted
+    private final int maxTrackedFilters;
+
+    // The maximum number of filter combinations suggested
+    private final int suggestionCount;
+
+    // The share of the requests a filter combination needs to be suggested
+    private final double minShare;
+
+    // Whether the views were filled from the database, no view is served before
+    private volatile boolean loaded;
+
+    /**
+     * Constructs the views declared in configuration, empty until the vehicles are loaded
+     *
+     * @param views the filters to materialize separated by semicolons, each a comma separated list of field=value
+     * pairs such as year=2012,make=Toyota, or * for the unfiltered list, only suited to small or read-mostly tables
+     * @param maxTrackedFilters the maximum number of filter combinations counted
+     * @param suggestionCount the maximum number of filter combinations suggested
+     * @param minShare the share of the requests a filter combination needs to be suggested, from 0 to 1
+     */
+    @Autowired
+    public VehicleMaterializedViews(@Value("${vehicle.materialized.views:}") String views,
+                                    @Value("${vehicle.materialized.max-tracked-filters:1000}") int maxTrackedFilters,
+                                    @Value("${vehicle.materialized.suggestions:5}") int suggestionCount,
+                                    @Value("${vehicle.materialized.min-share:0.05}") double minShare) {
+        this.maxTrackedFilters = maxTrackedFilters;
+        this.suggestionCount = suggestionCount;
+        this.minShare = minShare;
+        for (String spec : views.split(";")) {
+            if (!spec.trim().isEmpty()) {
+                Filter filter = Filter.parse(spec.trim());
+                this.views.put(filter, new View(filter));
+                requestCounts.put(filter, new LongAdder());
+            }
+        }
+    }
+
+    /**
+     * The views and suggestions, serialized as the response body of the materialized views route
+     */
+    public static class Report {
+
+        // The number of requests of any filter combination
+        private final long requests;
+
+        // The filter, vehicle count and request count of each view, in declaration order
+        private final List<Map<String, Object>> views;
+
+        // The filter, request count and share of each suggested combination, most requested first
+        private final List<Map<String, Object>> suggestions;
+
+        // Constructs the report from the counts taken by the views
+        Report(long requests, List<Map<String, Object>> views, List<Map<String, Object>> suggestions) {
+            this.requests = requests;
+            this.views = views;
+            this.suggestions = suggestions;
+        }
+
+        /**
+         * Gets the number of requests counted
+         *
+         * @return the request count of every filter combination
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * Gets the views, each holding its filter, its vehicle count and the requests it served
+         *
+         * @return the views in declaration order
+         */
+        public List<Map<String, Object>> getViews() {
+            return views;
+        }
+
+        /**
+         * Gets the filter combinations not materialized worth materializing, each holding its filter, its request
+         * count and its share of the requests
+         *
+         * @return the suggestions, most requested first
+         */
+        public List<Map<String, Object>> getSuggestions() {
+            return suggestions;
+        }
+    }
+
+    @Override
+    public void vehiclesLoaded(Collection<Vehicle> vehicles) {
+        for (View view : views.values()) {
+            view.load(vehicles);
+        }
+        loaded = true;
+    }
+
+    @Override
+    public void vehicleCreated(Vehicle vehicle) {
+        for (View view : views.values()) {
+            view.add(vehicle);
+        }
+    }
+
+    @Override
+    public void vehicleUpdated(Vehicle previous, Vehicle updated) {
+        for (View view : views.values()) {
+            view.remove(previous);
+            view.add(updated);
+        }
+    }
+
+    @Override
+    public void vehicleDeleted(Vehicle vehicle) {
+        for (View view : views.values()) {
+            view.remove(vehicle);
+        }
+    }
+
+    /**
+     * Counts a request of the filter combination and gets its materialized result if it has a view
+     *
+     * @param year the year filter, or null
+     * @param make the make filter, or null
+     * @param model the model filter, or null
+     * @return the vehicles matching any of the filters in filter order, which must not be modified, or null if the
+     * combination is not materialized
+     */
+    List<Vehicle> getVehicles(Integer year, String make, String model) {
+        Filter filter = new Filter(year, make, model);
+        count(filter);
+        View view = views.get(filter);
+        return view != null && loaded ? view.getVehicles() : null;
+    }
+
+    /**
+     * Reports the views and suggests the filter combinations to materialize
+     *
+     * @return the report of the views and suggestions
+     */
+    Report report() {
+        List<Map<String, Object>> viewRows = new ArrayList<>(views.size());
+        for (View view : views.values()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("filter", view.filter.toString());
+            row.put("vehicles", view.size());
+            row.put("requests", requestCounts.get(view.filter).sum());
+            viewRows.add(row);
+        }
+
+        long total = requests.sum();
+        List<Map.Entry<Filter, Long>> candidates = new ArrayList<>();
+        for (Map.Entry<Filter, LongAdder> entry : requestCounts.entrySet()) {
+            long count = entry.getValue().sum();
+            if (!views.containsKey(entry.getKey()) && count > 0 && count >= minShare * total) {
+                candidates.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), count));
+            }
+        }
+        candidates.sort(Map.Entry.<Filter, Long>comparingByValue().reversed()
+                .thenComparing(entry -> entry.getKey().toString()));
+
+        List<Map<String, Object>> suggestions = new ArrayList<>();
+        for (Map.Entry<Filter, Long> candidate : candidates.subList(0, Math.min(suggestionCount, candidates.size()))) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("filter", candidate.getKey().toString());
+            row.put("requests", candidate.getValue());
+            row.put("share", (double) candidate.getValue() / total);
+            suggestions.add(row);
+        }
+        return new Report(total, viewRows, suggestions);
+    }
+
+    /**
+     * Adds a request to the count of its filter combination, unless the combination is new and the cap is reached
+     *
+     * @param filter the filter combination requested
+     */
+    private void count(Filter filter) {
+        requests.increment();
+        LongAdder count = requestCounts.get(filter);
+        if (count == null) {
+            if (requestCounts.size() >= maxTrackedFilters) {
+                return;
+            }
+            count = requestCounts.computeIfAbsent(filter, key -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * A combination of the year, make and model filters of GET /vehicles, any of which may be absent
+     */
+    static final class Filter {
+
+        // The year filter, or null
+        private final Integer year;
+
+        // The make filter, or null
+        private final String make;
+
+        // The model filter, or null
+        private final String model;
+
+        /**
+         * Constructs the filter combination
+         *
+         * @param year the year filter, or null
+         * @param make the make filter, or null
+         * @param model the model filter, or null
+         */
+        Filter(Integer year, String make, String model) {
+            this.year = year;
+            this.make = make;
+            this.model = model;
+        }
+
+        /**
+         * Parses a filter combination written as comma separated field=value pairs, or * for no filter
+         *
+         * @param spec the filter combination, such as year=2012,make=Toyota
+         * @return the parsed filter combination
+         * @throws IllegalArgumentException if a field is unknown, repeated or without a value, or the year is not a
+         * number
+         */
+        static Filter parse(String spec) {
+            if (spec.equals("*")) {
+                return new Filter(null, null, null);
+            }
+            Map<String, String> values = new HashMap<>();
+            for (String pair : spec.split(",")) {
+                int separator = pair.indexOf('=');
+                String field = separator < 0 ? pair.trim() : pair.substring(0, separator).trim();
+                String value = separator < 0 ? "" : pair.substring(separator + 1).trim();
+                if (!VehicleStatistics.groupingFields.contains(field) || value.isEmpty() ||
+                        values.put(field, value) != null) {
+                    throw new IllegalArgumentException("Invalid materialized view filter: " + spec);
+                }
+            }
+            try {
+                return new Filter(values.containsKey("year") ? Integer.valueOf(values.get("year")) : null,
+                        values.get("make"), values.get("model"));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid materialized view year: " + spec, e);
+            }
+        }
+
+        /**
+         * Gets the group the vehicle is returned in, vehicles matching the year first, then the make, then the model
+         *
+         * @param vehicle the vehicle to place
+         * @return the index of the first filter the vehicle matches, 0 for every vehicle without filter, or -1 if it
+         * matches none
+         */
+        int groupOf(Vehicle vehicle) {
+            if (year == null && make == null && model == null) {
+                return 0;
+            } else if (year != null && year.equals(vehicle.getYear())) {
+                return 0;
+            } else if (make != null && make.equals(vehicle.getMake())) {
+                return 1;
+            } else if (model != null && model.equals(vehicle.getModel())) {
+                return 2;
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Filter)) {
+                return false;
+            }
+            Filter filter = (Filter) o;
+            return Objects.equals(year, filter.year) &&
+                    Objects.equals(make, filter.make) &&
+                    Objects.equals(model, filter.model);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(year, make, model);
+        }
+
+        /**
+         * Writes the filter combination in the form it is declared in
+         *
+         * @return the comma separated field=value pairs, or * for no filter
+         */
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(",");
+            Optional.ofNullable(year).ifPresent(value -> joiner.add("year=" + value));
+            Optional.ofNullable(make).ifPresent(value -> joiner.add("make=" + value));
+            Optional.ofNullable(model).ifPresent(value -> joiner.add("model=" + value));
+            return joiner.length() == 0 ? "*" : joiner.toString();
+        }
+    }
+
+    /**
+     * The materialized result of one filter combination, guarded by its own lock
+     */
+    private static final class View {
+
+        // The filter combination of the view
+        private final Filter filter;
+
+        // The matching vehicles keyed by id, one map per group in the order the groups are returned
+        private final List<NavigableMap<Integer, Vehicle>> groups = new ArrayList<>();
+
+        // The result served to reads, null when a write changed the groups since it was built
+        private volatile List<Vehicle> vehicles;
+
+        private View(Filter filter) {
+            this.filter = filter;
+            for (int group = 0; group < VehicleStatistics.groupingFields.size(); group++) {
+                groups.add(new TreeMap<>());
+            }
+        }
+
+        /**
+         * Replaces the content of the view with the matching vehicles
+         *
+         * @param all every vehicle of the database
+         */
+        private synchronized void load(Collection<Vehicle> all) {
+            for (NavigableMap<Integer, Vehicle> group : groups) {
+                group.clear();
+            }
+            for (Vehicle vehicle : all) {
+                add(vehicle);
+            }
+            vehicles = null;
+        }
+
+        /**
+         * Adds the vehicle to its group if it matches the filter
+         *
+         * @param vehicle the vehicle created or updated
+         */
+        private synchronized void add(Vehicle vehicle) {
+            int group = filter.groupOf(vehicle);
+            if (group >= 0) {
+                groups.get(group).put(vehicle.getId(), vehicle);
+                vehicles = null;
+            }
+        }
+
+        /**
+         * Removes the vehicle from its group if it matched the filter
+         *
+         * @param vehicle the vehicle values before an update or deletion
+         */
+        private synchronized void remove(Vehicle vehicle) {
+            int group = filter.groupOf(vehicle);
+            if (group >= 0 && groups.get(group).remove(vehicle.getId()) != null) {
+                vehicles = null;
+            }
+        }
+
+        /**
+         * Gets the number of vehicles in the view
+         *
+         * @return the vehicle count
+         */
+        private synchronized int size() {
+            int size = 0;
+            for (NavigableMap<Integer, Vehicle> group : groups) {
+                size += group.size();
+            }
+            return size;
+        }
+
+        /**
+         * Gets the result of the view, building it if a write changed the view since the last read. The build copies
+         * every vehicle of the view, the whole table for the unfiltered view
+         *
+         * @return the matching vehicles in filter order
+         */
+        private List<Vehicle> getVehicles() {
+            List<Vehicle> result = vehicles;
+            if (result == null) {
+                synchronized (this) {
+                    if (vehicles == null) {
+                        List<Vehicle> built = new ArrayList<>(size());
+                        for (NavigableMap<Integer, Vehicle> group : groups) {
+                            built.addAll(group.values());
+                        }
+                        vehicles = Collections.unmodifiableList(built);
+                    }
+                    result = vehicles;
+                }
+            }
+            return result;
+        }
+    }
+}
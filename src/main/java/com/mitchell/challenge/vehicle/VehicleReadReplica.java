@@ -0,0 +1,106 @@
+package com.mitchell.challenge.vehicle;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory replica of the vehicle table serving reads from immutable snapshots, enabled with
+ * vehicle.read-replica.enabled.
+ *
+ * The replica is fed by the service change notifications. Each write builds a new version of a persistent map and
+ * publishes it atomically, while readers grab the current version once and scan it without any lock, so long scans
+ * never block writers and writers never make readers wait. Large scans are split along the snapshot trie and run in
+ * parallel.
+ */
+@Component
+@ConditionalOnProperty(name = "vehicle.read-replica.enabled", havingValue = "true")
+public class VehicleReadReplica implements VehicleChangeListener {
+
+    // The latest published version of the vehicles
+    private final AtomicReference<PersistentVehicleMap> snapshot =
+            new AtomicReference<>(PersistentVehicleMap.empty());
+
+    // The processor running the snapshot scans, in parallel for large snapshots
+    private final VehicleResultProcessor resultProcessor;
+
+    /**
+     * Constructs an empty replica, filled once the service loads the vehicles
+     *
+     * @param resultProcessor the result processor dependency injected in
+     */
+    @Autowired
+    public VehicleReadReplica(VehicleResultProcessor resultProcessor) {
+        this.resultProcessor = resultProcessor;
+    }
+
+    @Override
+    public void vehiclesLoaded(Collection<Vehicle> vehicles) {
+        PersistentVehicleMap loaded = PersistentVehicleMap.empty();
+        for (Vehicle vehicle : vehicles) {
+            loaded = loaded.with(vehicle);
+        }
+        snapshot.set(loaded);
+    }
+
+    @Override
+    public void vehicleCreated(Vehicle vehicle) {
+        snapshot.updateAndGet(current -> current.with(vehicle));
+    }
+
+    @Override
+    public void vehicleUpdated(Vehicle previous, Vehicle updated) {
+        snapshot.updateAndGet(current -> current.with(updated));
+    }
+
+    @Override
+    public void vehicleDeleted(Vehicle vehicle) {
+        snapshot.updateAndGet(current -> current.without(vehicle.getId()));
+    }
+
+    /**
+     * Gets the vehicle with the given id from the current snapshot
+     *
+     * @param id the id of the vehicle
+     * @return the vehicle, or null if there is no vehicle with that id
+     */
+    Vehicle getVehicleById(Integer id) {
+        return snapshot.get().get(id);
+    }
+
+    /**
+     * Gets the vehicles matching any of the filters from the current snapshot, in the same order as the service
+     * returns them from the database: year matches first, then make matches, then model matches, each in id order.
+     *
+     * @param year the year value of the vehicle, or null
+     * @param make the make of the vehicle, or null
+     * @param model the model of the vehicle, or null
+     * @return the matching vehicles, or all vehicles if every filter is null
+     */
+    List<Vehicle> getVehicles(Integer year, String make, String model) {
+        PersistentVehicleMap current = snapshot.get();
+        boolean unfiltered = year == null && make == null && model == null;
+
+        // Single scan, each vehicle goes to the bucket of the first filter it matches
+        SortedMap<Integer, List<Vehicle>> buckets = resultProcessor.group(current.size(), current::stream, vehicle -> {
+            if (unfiltered || (year != null && year.equals(vehicle.getYear()))) {
+                return 0;
+            } else if (make != null && make.equals(vehicle.getMake())) {
+                return 1;
+            } else if (model != null && model.equals(vehicle.getModel())) {
+                return 2;
+            }
+            return null;
+        });
+
+        List<Vehicle> results = new ArrayList<>();
+        buckets.values().forEach(results::addAll);
+        return results;
+    }
+}
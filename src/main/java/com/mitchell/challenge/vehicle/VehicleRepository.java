@@ -2,29 +2,240 @@ package com.mitchell.challenge.vehicle;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
+import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Repository class containing all the SQL queries to the H2 in-memory database.
  * This class is primarily for data access.
+ *
+ * Every statement is built once as a constant, so each query sends the exact same SQL string and hits the prepared
+ * statement cache of the database session instead of being parsed again. Projections are precomputed for every set of
+ * columns, combination of filters and sort, selecting the columns in table order whatever order they are requested in. Every vehicle query orders its rows by id, the order
+ * the service, the read replica, the write-behind overlay and the materialized views all return vehicles in.
  */
 @Repository
-public class VehicleRepository {
+public class VehicleRepository extends VehicleStore {
+
+    private static final String getAllVehiclesSql = "" +
+            "SELECT " +
+            "id, " +
+            "year, " +
+            "make, " +
+            "model " +
+            "FROM vehicle " +
+            "ORDER BY id";
+
+    private static final String getVehicleByIdSql = "" +
+            "SELECT " +
+            "* " +
+            "FROM vehicle " +
+            "WHERE id=?";
+
+    private static final String getVehiclesByYearSql = "" +
+            "SELECT " +
+            "* " +
+            "FROM vehicle " +
+            "WHERE year=? " +
+            "ORDER BY id";
+
+    private static final String getVehiclesByMakeSql = "" +
+            "SELECT " +
+            "* " +
+            "FROM vehicle " +
+            "WHERE make=? " +
+            "ORDER BY id";
+
+    private static final String getVehiclesByModelSql = "" +
+            "SELECT " +
+            "* " +
+            "FROM vehicle " +
+            "WHERE model=? " +
+            "ORDER BY id";
+
+    private static final String createVehicleSql = "" +
+            "INSERT INTO vehicle (" +
+            "id, " +
+            "year, " +
+            "make, " +
+            "model) " +
+            "VALUES (?, ?, ?, ?)";
+
+    private static final String updateVehicleYearSql = "" +
+            "UPDATE vehicle " +
+            "SET year = ? " +
+            "WHERE id = ?";
+
+    private static final String updateVehicleMakeSql = "" +
+            "UPDATE vehicle " +
+            "SET make = ? " +
+            "WHERE id = ?";
+
+    private static final String updateVehicleModelSql = "" +
+            "UPDATE vehicle " +
+            "SET model = ? " +
+            "WHERE id = ?";
+
+    private static final String updateVehicleSql = "" +
+            "UPDATE vehicle " +
+            "SET year = COALESCE(?, year), " +
+            "make = COALESCE(?, make), " +
+            "model = COALESCE(?, model) " +
+            "WHERE id = ?";
+
+    private static final String isIdTakenSql = "" +
+            "SELECT EXISTS (" +
+            "SELECT 1 " +
+            "FROM vehicle " +
+            "WHERE id = ?" +
+            ")";
+
+    private static final String deleteVehicleSql = "" +
+            "DELETE FROM vehicle " +
+            "WHERE id = ?";
+
+    // Deletes every row inside the current transaction, unlike TRUNCATE which H2 commits on its own
+    private static final String deleteAllVehiclesSql = "" +
+            "DELETE FROM vehicle";
+
+    // The filterable columns, in the bit order of the filter masks
+    private static final String[] filterColumns = {"year", "make", "model"};
+
+    // The columns of the vehicle table, in the bit order of the column masks and the order of the sort indexes
+    private static final String[] vehicleColumns = {"id", "year", "make", "model"};
+
+    // Projections by id, indexed by the bit mask of the selected columns
+    private static final String[] getVehicleFieldsByIdSql = new String[1 << vehicleColumns.length];
+
+    // Projections matching any filter, indexed by column mask, filter mask and sort index
+    private static final String[][][] getVehicleFieldsSql =
+            new String[1 << vehicleColumns.length][8][1 + 2 * vehicleColumns.length];
+
+    // Sizes the id list of an IN query is padded to, so only a handful of distinct statements are ever prepared
+    private static final int[] idListSizes = {1, 4, 16, 64, 256, 1024};
+
+    // Select by id list statements, one per padded list size
+    private static final String[] getVehiclesByIdsSql = new String[idListSizes.length];
+
+    // Select and delete statements matching all filters, indexed by the bit mask of the non-null year, make and model
+    private static final String[] getVehiclesMatchingAllSql = new String[8];
+    private static final String[] lockVehiclesMatchingAllSql = new String[8];
+    private static final String[] deleteVehiclesMatchingAllSql = new String[8];
+
+    static {
+        for (int i = 0; i < idListSizes.length; i++) {
+            getVehiclesByIdsSql[i] = "" +
+                    "SELECT " +
+                    "* " +
+                    "FROM vehicle " +
+                    "WHERE id IN (" + String.join(", ", Collections.nCopies(idListSizes[i], "?")) + ")";
+        }
+        for (int mask = 0; mask < 8; mask++) {
+            List<String> conditions = new ArrayList<>();
+            if ((mask & 1) != 0) {
+                conditions.add("year = ?");
+            }
+            if ((mask & 2) != 0) {
+                conditions.add("make = ?");
+            }
+            if ((mask & 4) != 0) {
+                conditions.add("model = ?");
+            }
+            String where = conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions);
+            getVehiclesMatchingAllSql[mask] = "" +
+                    "SELECT " +
+                    "* " +
+                    "FROM vehicle " +
+                    where + (where.isEmpty() ? "" : " ") +
+                    "ORDER BY id";
+            lockVehiclesMatchingAllSql[mask] = "" +
+                    getVehiclesMatchingAllSql[mask] + " " +
+                    "FOR UPDATE";
+            deleteVehiclesMatchingAllSql[mask] = "" +
+                    "DELETE FROM vehicle " +
+                    where;
+        }
+        for (int columnMask = 1; columnMask < getVehicleFieldsSql.length; columnMask++) {
+            List<String> columns = new ArrayList<>();
+            for (int column = 0; column < vehicleColumns.length; column++) {
+                if ((columnMask & 1 << column) != 0) {
+                    columns.add(vehicleColumns[column]);
+                }
+            }
+            String select = "SELECT " + String.join(", ", columns) + " FROM vehicle ";
+            getVehicleFieldsByIdSql[columnMask] = select + "WHERE id=?";
+            for (int filterMask = 0; filterMask < 8; filterMask++) {
+                for (int sortIndex = 0; sortIndex < getVehicleFieldsSql[columnMask][filterMask].length; sortIndex++) {
+                    getVehicleFieldsSql[columnMask][filterMask][sortIndex] =
+                            select + fieldsWhereAndOrder(filterMask, sortIndex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the filter and order clauses of a projection.
+     *
+     * Without a sort column the rows come in the same order as the service merges the filter queries: each row is
+     * ranked by the first filter it matches, the rank taking the arguments of every filter but the last a second time.
+     *
+     * @param filterMask the bit mask of the filters, matched with OR
+     * @param sortIndex 0 to keep the filter order, else 1 plus twice the index of the sort column, plus 1 if descending
+     * @return the WHERE and ORDER BY clauses
+     */
+    private static String fieldsWhereAndOrder(int filterMask, int sortIndex) {
+        List<String> conditions = new ArrayList<>();
+        for (int column = 0; column < filterColumns.length; column++) {
+            if ((filterMask & 1 << column) != 0) {
+                conditions.add(filterColumns[column] + " = ?");
+            }
+        }
+        String orderBy;
+        if (sortIndex > 0) {
+            String direction = (sortIndex - 1) % 2 == 1 ? " DESC" : "";
+            orderBy = vehicleColumns[(sortIndex - 1) / 2] + direction + ", id" + direction;
+        } else if (conditions.size() > 1) {
+            StringBuilder rank = new StringBuilder("CASE");
+            for (int i = 0; i < conditions.size() - 1; i++) {
+                rank.append(" WHEN ").append(conditions.get(i)).append(" THEN ").append(i);
+            }
+            rank.append(" ELSE ").append(conditions.size() - 1).append(" END");
+            orderBy = rank + ", id";
+        } else {
+            orderBy = "id";
+        }
+        return (conditions.isEmpty() ? "" : "WHERE " + String.join(" OR ", conditions) + " ") +
+                "ORDER BY " + orderBy;
+    }
+
+    // The mapper building a vehicle from each row of a vehicle query
+    private static final RowMapper<Vehicle> vehicleRowMapper = (resultSet, i) -> new Vehicle(
+            resultSet.getInt("id"),
+            resultSet.getInt("year"),
+            resultSet.getString("make"),
+            resultSet.getString("model"));
 
     // Variable that references the database driver for Spring
     private final JdbcTemplate jdbcTemplate;
 
+    // Variable used to run batched statements in a single transaction
+    private final TransactionTemplate transactionTemplate;
+
     /**
      * The constructor of the repository where the reference to the database driver is injected.
      *
      * @param jdbcTemplate the driver wrapper object which to make request from
+     * @param transactionTemplate the transaction wrapper object which to run batches in
      */
     @Autowired
-    public VehicleRepository(JdbcTemplate jdbcTemplate) {
+    public VehicleRepository(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
     }
 
     /**
@@ -32,15 +243,9 @@ public class VehicleRepository {
      *
      * @return the list of all vehicles in the database
      */
+    @Override
     List<Vehicle> getAllVehicles() {
-        String sql = "" +
-                "SELECT " +
-                "id, " +
-                "year, " +
-                "make, " +
-                "model " +
-                "FROM vehicle";
-        return jdbcTemplate.query(sql, mapVehicleFromDB());
+        return jdbcTemplate.query(getAllVehiclesSql, vehicleRowMapper);
     }
 
     /**
@@ -49,13 +254,9 @@ public class VehicleRepository {
      * @param id the id which to search for the vehicle
      * @return the vehicle retrieved
      */
+    @Override
     Vehicle getVehicleById(Integer id) {
-        String sql = "" +
-                "SELECT " +
-                "* " +
-                "FROM vehicle " +
-                "WHERE id=?";
-        return jdbcTemplate.queryForObject(sql, new Object[]{id}, mapVehicleFromDB());
+        return jdbcTemplate.queryForObject(getVehicleByIdSql, new Object[]{id}, vehicleRowMapper);
     }
 
     /**
@@ -64,13 +265,9 @@ public class VehicleRepository {
      * @param year the year of the vehicles to retrieve
      * @return the list of matching vehicles
      */
+    @Override
     List<Vehicle> getVehiclesByYear(Integer year) {
-        String sql = "" +
-                "SELECT " +
-                "* " +
-                "FROM vehicle " +
-                "WHERE year=?";
-        return jdbcTemplate.query(sql, new Object[]{year}, mapVehicleFromDB());
+        return jdbcTemplate.query(getVehiclesByYearSql, new Object[]{year}, vehicleRowMapper);
     }
 
     /**
@@ -79,13 +276,9 @@ public class VehicleRepository {
      * @param make the make of teh vehicles to retrieve
      * @return the list of matching vehicles
      */
+    @Override
     List<Vehicle> getVehiclesByMake(String make) {
-        String sql = "" +
-                "SELECT " +
-                "* " +
-                "FROM vehicle " +
-                "WHERE make=?";
-        return jdbcTemplate.query(sql, new Object[]{make}, mapVehicleFromDB());
+        return jdbcTemplate.query(getVehiclesByMakeSql, new Object[]{make}, vehicleRowMapper);
     }
 
     /**
@@ -94,13 +287,93 @@ public class VehicleRepository {
      * @param model the specific model which to fetch the list of vehicles
      * @return the list of matching vehicles
      */
+    @Override
     List<Vehicle> getVehiclesByModel(String model) {
-        String sql = "" +
-                "SELECT " +
-                "* " +
-                "FROM vehicle " +
-                "WHERE model=?";
-        return jdbcTemplate.query(sql, new Object[]{model}, mapVehicleFromDB());
+        return jdbcTemplate.query(getVehiclesByModelSql, new Object[]{model}, vehicleRowMapper);
+    }
+
+    /**
+     * Gets the list of vehicles with the specific ids, ids not in the database are skipped
+     *
+     * The ids are queried in chunks of at most 1024, each chunk padded to a fixed size by repeating its last id.
+     *
+     * @param ids the ids of the vehicles to retrieve
+     * @return the list of matching vehicles
+     */
+    @Override
+    List<Vehicle> getVehiclesByIds(Collection<Integer> ids) {
+        List<Integer> idList = new ArrayList<>(ids);
+        List<Vehicle> vehicles = new ArrayList<>();
+        int maxChunk = idListSizes[idListSizes.length - 1];
+        for (int from = 0; from < idList.size(); from += maxChunk) {
+            List<Integer> chunk = idList.subList(from, Math.min(from + maxChunk, idList.size()));
+            int sizeIndex = 0;
+            while (idListSizes[sizeIndex] < chunk.size()) {
+                sizeIndex++;
+            }
+            Object[] args = new Object[idListSizes[sizeIndex]];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = chunk.get(Math.min(i, chunk.size() - 1));
+            }
+            vehicles.addAll(jdbcTemplate.query(getVehiclesByIdsSql[sizeIndex], args, vehicleRowMapper));
+        }
+        return vehicles;
+    }
+
+    /**
+     * Gets the list of vehicles matching every given filter, null filters are ignored
+     *
+     * @param year the year of the vehicles to retrieve, or null
+     * @param make the make of the vehicles to retrieve, or null
+     * @param model the model of the vehicles to retrieve, or null
+     * @return the list of matching vehicles
+     */
+    @Override
+    List<Vehicle> getVehiclesMatchingAll(Integer year, String make, String model) {
+        return jdbcTemplate.query(
+                getVehiclesMatchingAllSql[filterMask(year, make, model)],
+                filterArgs(year, make, model),
+                vehicleRowMapper);
+    }
+
+    /**
+     * Gets only the given columns of the vehicles matching any of the filters, without building vehicle objects
+     *
+     * Without a sort column the rows come in the same order as the service merges the filter queries: year matches
+     * first, then make matches, then model matches, each in id order.
+     *
+     * @param fields the columns to select, must be vehicle columns
+     * @param year the year filter, or null
+     * @param make the make filter, or null
+     * @param model the model filter, or null
+     * @param sort the column to sort by, or null to keep the filter order
+     * @param descending whether to sort in descending order
+     * @return a map of column name to value for each matching vehicle, columns in the requested order
+     */
+    @Override
+    List<Map<String, Object>> getVehicleFields(
+            List<String> fields, Integer year, String make, String model, String sort, boolean descending) {
+        Object[] filterArgs = filterArgs(year, make, model);
+        List<Object> args = new ArrayList<>(Arrays.asList(filterArgs));
+        if (sort == null && filterArgs.length > 1) {
+            args.addAll(Arrays.asList(filterArgs).subList(0, filterArgs.length - 1));
+        }
+        int sortIndex = sort == null ? 0 : 1 + 2 * Arrays.asList(vehicleColumns).indexOf(sort) + (descending ? 1 : 0);
+        String sql = getVehicleFieldsSql[columnMask(fields)][filterMask(year, make, model)][sortIndex];
+        return jdbcTemplate.query(sql, args.toArray(), fieldsRowMapper(fields));
+    }
+
+    /**
+     * Gets only the given columns of the vehicle with the specific id, without building a vehicle object
+     *
+     * @param fields the columns to select, must be vehicle columns
+     * @param id the id which to search for the vehicle
+     * @return a map of column name to value, columns in the requested order
+     */
+    @Override
+    Map<String, Object> getVehicleFieldsById(List<String> fields, Integer id) {
+        return jdbcTemplate.queryForObject(getVehicleFieldsByIdSql[columnMask(fields)], new Object[]{id},
+                fieldsRowMapper(fields));
     }
 
     /**
@@ -109,15 +382,10 @@ public class VehicleRepository {
      * @param vehicle the vehicle object representation of the request body
      * @return the success value of the creation, 0 for failure
      */
+    @Override
     int createVehicle(Vehicle vehicle) {
-        String sql = "" +
-                "INSERT INTO vehicle (" +
-                "id, " +
-                "year, " +
-                "make, " +
-                "model) " +
-                "VALUES (?, ?, ?, ?)";
-        return jdbcTemplate.update(sql, vehicle.getId(), vehicle.getYear(), vehicle.getMake(), vehicle.getModel());
+        return jdbcTemplate.update(
+                createVehicleSql, vehicle.getId(), vehicle.getYear(), vehicle.getMake(), vehicle.getModel());
     }
 
     /**
@@ -127,12 +395,9 @@ public class VehicleRepository {
      * @param year the updated year of the vehicle
      * @return the success value of the update, 0 for failure
      */
+    @Override
     int updateVehicleYear(Integer id, Integer year) {
-        String sql = "" +
-                "UPDATE vehicle " +
-                "SET year = ? " +
-                "WHERE id = ?";
-        return jdbcTemplate.update(sql, year, id);
+        return jdbcTemplate.update(updateVehicleYearSql, year, id);
     }
 
     /**
@@ -142,12 +407,9 @@ public class VehicleRepository {
      * @param make the updated make of the vehicle
      * @return the success value of the update, 0 for failure
      */
+    @Override
     int updateVehicleMake(Integer id, String make) {
-        String sql = "" +
-                "UPDATE vehicle " +
-                "SET make = ? " +
-                "WHERE id = ?";
-        return jdbcTemplate.update(sql, make, id);
+        return jdbcTemplate.update(updateVehicleMakeSql, make, id);
     }
 
     /**
@@ -157,12 +419,36 @@ public class VehicleRepository {
      * @param model the updated model of the vehicle
      * @return the success value of the update, 0 for failure
      */
+    @Override
     int updateVehicleModel(Integer id, String model) {
-        String sql = "" +
-                "UPDATE vehicle " +
-                "SET model = ? " +
-                "WHERE id = ?";
-        return jdbcTemplate.update(sql, model, id);
+        return jdbcTemplate.update(updateVehicleModelSql, model, id);
+    }
+
+    /**
+     * Inserts every vehicle in one batched transaction, without checking for existing ids
+     *
+     * @param vehicles the vehicles to insert
+     * @return the number of rows inserted by each statement of the batch
+     */
+    @Override
+    int[] createVehicles(List<Vehicle> vehicles) {
+        List<Object[]> batchArgs = createVehicleArgs(vehicles);
+        return transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(createVehicleSql, batchArgs));
+    }
+
+    /**
+     * Applies the partial updates of every vehicle in one batched transaction, null values are left unchanged
+     *
+     * @param vehicles the vehicles holding the id to update along with the values to modify
+     * @return the number of rows updated by each statement of the batch
+     */
+    @Override
+    int[] updateVehicles(List<Vehicle> vehicles) {
+        List<Object[]> batchArgs = new ArrayList<>(vehicles.size());
+        for (Vehicle vehicle : vehicles) {
+            batchArgs.add(new Object[]{vehicle.getYear(), vehicle.getMake(), vehicle.getModel(), vehicle.getId()});
+        }
+        return transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(updateVehicleSql, batchArgs));
     }
 
     /**
@@ -171,16 +457,11 @@ public class VehicleRepository {
      * @param id the id of the vehicle which to do the checking
      * @return boolean representation of whether the id is taken
      */
+    @Override
     @SuppressWarnings("ConstantConditions")
     boolean isIdTaken(int id) {
-        String sql = "" +
-                "SELECT EXISTS (" +
-                "SELECT 1 " +
-                "FROM vehicle " +
-                "WHERE id = ?" +
-                ")";
         return jdbcTemplate.queryForObject(
-                sql,
+                isIdTakenSql,
                 new Object[]{id},
                 (resultSet, i) -> resultSet.getBoolean(1)
         );
@@ -192,25 +473,168 @@ public class VehicleRepository {
      * @param id the id of the vehicle which to perform the deletion
      * @return the success value of the deletion, 0 for failure
      */
+    @Override
     int deleteVehicle(Integer id) {
-        String sql = "" +
-                "DELETE FROM vehicle " +
-                "WHERE id = ?";
-        return jdbcTemplate.update(sql, id);
+        return jdbcTemplate.update(deleteVehicleSql, id);
+    }
+
+    /**
+     * Deletes the vehicles with the given ids in one batched transaction
+     *
+     * @param ids the ids of the vehicles to delete
+     * @return the number of rows deleted by each statement of the batch
+     */
+    int[] deleteVehicles(List<Integer> ids) {
+        List<Object[]> batchArgs = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            batchArgs.add(new Object[]{id});
+        }
+        return transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(deleteVehicleSql, batchArgs));
     }
 
     /**
-     * Gives the lambda function for retrieving all vehicles from the database
+     * Runs the work in one transaction of this database, which the statements of the repository run by the work join
      *
-     * @return the mapper lambda function for retrieving all vehicles from the database
+     * @param work the work to run
      */
-    private RowMapper<Vehicle> mapVehicleFromDB() {
+    void inTransaction(Runnable work) {
+        transactionTemplate.execute(status -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Replaces every vehicle of the table in one transaction, deleting the rows and inserting each batch as a batched
+     * statement, so the table is left unchanged if any insert fails
+     *
+     * @param source the function passing the new vehicles, in batches, to the consumer it is given
+     */
+    @Override
+    void replaceAllVehicles(Consumer<Consumer<List<Vehicle>>> source) {
+        transactionTemplate.execute(status -> {
+            jdbcTemplate.update(deleteAllVehiclesSql);
+            source.accept(batch -> jdbcTemplate.batchUpdate(createVehicleSql, createVehicleArgs(batch)));
+            return null;
+        });
+    }
+
+    /**
+     * Calls the action with every vehicle of the table in id order, one row at a time without building a list
+     *
+     * @param action the action to call with each vehicle
+     */
+    @Override
+    void forEachVehicle(Consumer<Vehicle> action) {
+        jdbcTemplate.query(getAllVehiclesSql,
+                (RowCallbackHandler) resultSet -> action.accept(vehicleRowMapper.mapRow(resultSet, 0)));
+    }
+
+    /**
+     * Delete every vehicle matching all the given filters in a single statement, null filters are ignored, unless more
+     * than the cap match
+     *
+     * The matching rows are read with a row lock and deleted in the same transaction, so the vehicles returned are
+     * exactly the ones deleted.
+     *
+     * @param year the year of the vehicles to delete, or null
+     * @param make the make of the vehicles to delete, or null
+     * @param model the model of the vehicles to delete, or null
+     * @param maxDeleted the most vehicles that may be deleted
+     * @return the vehicles deleted as they were before the deletion, or null if more than the cap matched and nothing
+     * was deleted
+     */
+    @Override
+    List<Vehicle> deleteVehiclesMatchingAll(Integer year, String make, String model, int maxDeleted) {
+        int mask = filterMask(year, make, model);
+        Object[] args = filterArgs(year, make, model);
+        return transactionTemplate.execute(status -> {
+            List<Vehicle> matching = jdbcTemplate.query(lockVehiclesMatchingAllSql[mask], args, vehicleRowMapper);
+            if (matching.size() > maxDeleted) {
+                return null;
+            }
+            if (!matching.isEmpty()) {
+                jdbcTemplate.update(deleteVehiclesMatchingAllSql[mask], args);
+            }
+            return matching;
+        });
+    }
+
+    /**
+     * Gives the arguments of the insert statement for each vehicle of a batch
+     *
+     * @param vehicles the vehicles to insert
+     * @return the id, year, make and model of each vehicle
+     */
+    private static List<Object[]> createVehicleArgs(List<Vehicle> vehicles) {
+        List<Object[]> batchArgs = new ArrayList<>(vehicles.size());
+        for (Vehicle vehicle : vehicles) {
+            batchArgs.add(new Object[]{vehicle.getId(), vehicle.getYear(), vehicle.getMake(), vehicle.getModel()});
+        }
+        return batchArgs;
+    }
+
+    /**
+     * Gives the mapper reading the selected columns of each row into a map keyed by the lower case column name
+     *
+     * @param fields the selected columns, in the order of the map
+     * @return the mapper of projected rows
+     */
+    private static RowMapper<Map<String, Object>> fieldsRowMapper(List<String> fields) {
         return (resultSet, i) -> {
-            int id = Integer.parseInt(resultSet.getString("id"));
-            int year = Integer.parseInt(resultSet.getString("year"));
-            String make = resultSet.getString("make");
-            String model = resultSet.getString("model");
-            return new Vehicle(id, year, make, model);
+            Map<String, Object> row = new LinkedHashMap<>(fields.size() * 2);
+            for (String field : fields) {
+                row.put(field, resultSet.getObject(field));
+            }
+            return row;
         };
     }
+
+    /**
+     * Gets the bit mask of the selected columns, which indexes the precomputed projections
+     *
+     * @param fields the selected columns, must be vehicle columns
+     * @return the bit mask of the columns in the order of the vehicle columns
+     */
+    private static int columnMask(List<String> fields) {
+        int mask = 0;
+        for (String field : fields) {
+            mask |= 1 << Arrays.asList(vehicleColumns).indexOf(field);
+        }
+        return mask;
+    }
+
+    /**
+     * Gives the bit mask of the non-null filters, used to pick the precompiled statement
+     *
+     * @param year the year filter, or null
+     * @param make the make filter, or null
+     * @param model the model filter, or null
+     * @return the mask with bit 0 for year, bit 1 for make and bit 2 for model
+     */
+    private static int filterMask(Integer year, String make, String model) {
+        return (year != null ? 1 : 0) | (make != null ? 2 : 0) | (model != null ? 4 : 0);
+    }
+
+    /**
+     * Gives the values of the non-null filters in placeholder order
+     *
+     * @param year the year filter, or null
+     * @param make the make filter, or null
+     * @param model the model filter, or null
+     * @return the statement arguments
+     */
+    private static Object[] filterArgs(Integer year, String make, String model) {
+        List<Object> args = new ArrayList<>(3);
+        if (year != null) {
+            args.add(year);
+        }
+        if (make != null) {
+            args.add(make);
+        }
+        if (model != null) {
+            args.add(model);
+        }
+        return args.toArray();
+    }
 }
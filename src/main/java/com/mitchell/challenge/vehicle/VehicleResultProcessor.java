@@ -0,0 +1,141 @@
+package com.mitchell.challenge.vehicle;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Processes vehicle result sets in the JVM: merging, filtering and sorting.
+ *
+ * Result sets at or above the configured threshold are processed as parallel streams on a dedicated fork-join pool,
+ * smaller ones sequentially on the calling thread where the fork-join overhead would outweigh the gain.
+ */
+@Component
+public class VehicleResultProcessor {
+
+    // The fields vehicles can be sorted by
+    static final List<String> sortFields = Collections.unmodifiableList(Arrays.asList("id", "year", "make", "model"));
+
+    // The fork-join pool parallel streams run in, sized independently of the common pool
+    private final ForkJoinPool pool;
+
+    // Minimum result size for which the parallel path is used
+    private final int parallelThreshold;
+
+    /**
+     * Constructs the processor with its own fork-join pool
+     *
+     * @param parallelism the number of worker threads of the pool, 0 for the number of available processors
+     * @param parallelThreshold the minimum result size for which the parallel path is used
+     */
+    @Autowired
+    public VehicleResultProcessor(
+            @Value("${vehicle.parallel.parallelism:0}") int parallelism,
+            @Value("${vehicle.parallel.threshold:10000}") int parallelThreshold) {
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Shuts the fork-join pool down
+     */
+    @PreDestroy
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Concatenates the lists keeping only the first vehicle seen for each id, in encounter order
+     *
+     * @param lists the lists of vehicles to merge
+     * @return the merged list without duplicates
+     */
+    List<Vehicle> union(List<List<Vehicle>> lists) {
+        Map<Integer, Vehicle> merged = new LinkedHashMap<>();
+        for (List<Vehicle> list : lists) {
+            for (Vehicle vehicle : list) {
+                merged.putIfAbsent(vehicle.getId(), vehicle);
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * Groups the vehicles of the stream by the key computed for each of them, dropping vehicles whose key is null
+     *
+     * The classifier is called once per vehicle. The groups are returned in key order and keep the encounter order of
+     * the stream within each group, also when run in parallel.
+     *
+     * @param size the expected number of vehicles, used to decide whether to run in parallel
+     * @param vehicles the supplier of the stream, called with true when the stream should be parallel
+     * @param classifier the function computing the group key of a vehicle, or null to drop the vehicle
+     * @param <K> the type of the group keys
+     * @return the vehicles of each group keyed by group key
+     */
+    <K extends Comparable<K>> SortedMap<K, List<Vehicle>> group(
+            int size, Function<Boolean, Stream<Vehicle>> vehicles, Function<Vehicle, K> classifier) {
+        boolean parallel = size >= parallelThreshold;
+        return run(parallel, () -> vehicles.apply(parallel)
+                .map(vehicle -> new AbstractMap.SimpleImmutableEntry<>(classifier.apply(vehicle), vehicle))
+                .filter(entry -> entry.getKey() != null)
+                .collect(Collectors.groupingBy(Map.Entry::getKey, TreeMap::new,
+                        Collectors.mapping(Map.Entry::getValue, Collectors.toList()))));
+    }
+
+    /**
+     * Sorts the vehicles by the given field, ties being broken by id
+     *
+     * @param vehicles the vehicles to sort
+     * @param sort the field to sort by, one of id, year, make and model
+     * @param descending whether to sort in descending order
+     * @return a new sorted list
+     */
+    List<Vehicle> sort(List<Vehicle> vehicles, String sort, boolean descending) {
+        Comparator<Vehicle> comparator = comparatorOf(sort).thenComparing(Vehicle::getId);
+        Comparator<Vehicle> ordered = descending ? comparator.reversed() : comparator;
+        boolean parallel = vehicles.size() >= parallelThreshold;
+        return run(parallel, () -> (parallel ? vehicles.parallelStream() : vehicles.stream())
+                .sorted(ordered)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Gives the comparator of the field
+     *
+     * @param sort the field to sort by
+     * @return the comparator of vehicles on that field
+     */
+    private static Comparator<Vehicle> comparatorOf(String sort) {
+        switch (sort) {
+            case "year":
+                return Comparator.comparing(Vehicle::getYear);
+            case "make":
+                return Comparator.comparing(Vehicle::getMake);
+            case "model":
+                return Comparator.comparing(Vehicle::getModel);
+            default:
+                return Comparator.comparing(Vehicle::getId);
+        }
+    }
+
+    /**
+     * Runs the task inside the fork-join pool when parallel so its parallel streams use the pool workers, or on the
+     * calling thread otherwise
+     *
+     * @param parallel whether the task runs parallel streams
+     * @param task the task to run
+     * @param <T> the result type of the task
+     * @return the result of the task
+     */
+    private <T> T run(boolean parallel, Supplier<T> task) {
+        return parallel ? pool.submit(task::get).join() : task.get();
+    }
+}
@@ -0,0 +1,393 @@
+package com.mitchell.challenge.vehicle;
+
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory search index over the make and model of every vehicle in the database.
+ *
+ * Two structures are kept side by side: a prefix trie of the lower cased make, model and their individual words, used
+ * for autocomplete style lookups, and a trigram index used as a fuzzy fallback when the prefix lookup does not produce
+ * enough results. The index is maintained incrementally through the service change notifications on every create,
+ * update and delete.
+ *
+ * The index guards its own state with a read-write lock, so searches run concurrently with each other and the service
+ * may notify writes of different vehicles from several threads at once.
+ */
+@Component
+public class VehicleSearchIndex implements VehicleChangeListener {
+
+    // Minimum share of the query trigrams a vehicle must contain to be returned as a fuzzy match
+    private static final double minFuzzyScore = 0.3;
+
+    // Maximum number of vehicles scored by a fuzzy search, bounding its cost on large indexes
+    private static final int maxFuzzyCandidates = 2048;
+
+    // The vehicles currently indexed, keyed by id, used to unindex the old terms when a vehicle changes
+    private final Map<Integer, Vehicle> vehicles = new HashMap<>();
+
+    // The root of the prefix trie, terminal nodes hold the ids of the vehicles having that term
+    private final TrieNode root = new TrieNode();
+
+    // Posting lists of vehicle ids keyed by the trigrams of their make and model, sorted so capped fuzzy searches
+    // score the lowest ids
+    private final Map<String, Set<Integer>> trigrams = new HashMap<>();
+
+    // Lock allowing concurrent searches while writes to the index are exclusive
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Node of the prefix trie, children are kept sorted so completions come back in alphabetical order
+     */
+    private static class TrieNode {
+        private final Map<Character, TrieNode> children = new TreeMap<>();
+        private final Set<Integer> ids = new TreeSet<>();
+    }
+
+    @Override
+    public void vehiclesLoaded(Collection<Vehicle> allVehicles) {
+        rebuild(allVehicles);
+    }
+
+    @Override
+    public void vehicleCreated(Vehicle vehicle) {
+        add(vehicle);
+    }
+
+    @Override
+    public void vehicleUpdated(Vehicle previous, Vehicle updated) {
+        add(updated);
+    }
+
+    @Override
+    public void vehicleDeleted(Vehicle vehicle) {
+        remove(vehicle.getId());
+    }
+
+    /**
+     * Removes every vehicle from the index and indexes the given vehicles instead
+     *
+     * @param allVehicles the full list of vehicles in the database
+     */
+    void rebuild(Collection<Vehicle> allVehicles) {
+        lock.writeLock().lock();
+        try {
+            vehicles.clear();
+            root.children.clear();
+            root.ids.clear();
+            trigrams.clear();
+            for (Vehicle vehicle : allVehicles) {
+                insert(vehicle);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a vehicle to the index, replacing the previous entry if the id is already indexed
+     *
+     * @param vehicle the vehicle to index
+     */
+    void add(Vehicle vehicle) {
+        lock.writeLock().lock();
+        try {
+            Vehicle previous = vehicles.get(vehicle.getId());
+            if (previous != null) {
+                delete(previous);
+            }
+            insert(vehicle);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the vehicle with the given id from the index
+     *
+     * @param id the id of the vehicle to unindex
+     */
+    void remove(Integer id) {
+        lock.writeLock().lock();
+        try {
+            Vehicle previous = vehicles.get(id);
+            if (previous != null) {
+                delete(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Searches the index for vehicles whose make or model matches the query.
+     *
+     * Prefix matches on the words of the make or model come first, shortest completions first, followed by fuzzy
+     * trigram matches ordered by similarity if fewer than limit vehicles matched by prefix.
+     *
+     * @param query the text typed by the user
+     * @param limit the maximum number of vehicles to return
+     * @return the top matching vehicles
+     */
+    List<Vehicle> search(String query, int limit) {
+        String normalized = normalize(query);
+        String[] tokens = normalized.split(" ");
+        Set<Integer> resultIds = new LinkedHashSet<>();
+
+        lock.readLock().lock();
+        try {
+            collectPrefixMatches(tokens, limit, resultIds);
+            if (resultIds.size() < limit) {
+                collectFuzzyMatches(normalized, limit, resultIds);
+            }
+            List<Vehicle> results = new ArrayList<>(resultIds.size());
+            for (Integer id : resultIds) {
+                results.add(vehicles.get(id));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Walks the trie breadth first below the first query token, keeping vehicles whose terms also start with every
+     * other token of the query
+     *
+     * @param tokens the normalized words of the query
+     * @param limit the maximum number of vehicles to collect
+     * @param resultIds the ids collected so far
+     */
+    private void collectPrefixMatches(String[] tokens, int limit, Set<Integer> resultIds) {
+        TrieNode node = root;
+        for (char c : tokens[0].toCharArray()) {
+            node = node.children.get(c);
+            if (node == null) {
+                return;
+            }
+        }
+
+        Deque<TrieNode> queue = new ArrayDeque<>();
+        queue.add(node);
+        while (!queue.isEmpty() && resultIds.size() < limit) {
+            TrieNode current = queue.poll();
+            for (Integer id : current.ids) {
+                if (resultIds.size() >= limit) {
+                    break;
+                }
+                if (matchesAllTokens(vehicles.get(id), tokens)) {
+                    resultIds.add(id);
+                }
+            }
+            queue.addAll(current.children.values());
+        }
+    }
+
+    /**
+     * Scores the vehicles sharing enough trigrams with the query and keeps the most similar ones.
+     *
+     * A vehicle sharing the minimum number of trigrams m out of the n of the query has at least one of them among the
+     * n - m + 1 rarest, so candidates are only drawn from the posting lists of those, rarest first, and each candidate
+     * is scored by probing the other lists. Common trigrams are therefore never walked, and at most
+     * maxFuzzyCandidates candidates are scored, keeping the cost of a search bounded however large the index grows.
+     * Past that cap the matches are approximate: the posting lists iterate in id order, so the candidates scored are
+     * the lowest ids of the rarest lists, and a better scoring vehicle with a higher id may be missed.
+     *
+     * @param normalized the normalized query
+     * @param limit the maximum number of vehicles to collect
+     * @param resultIds the ids collected so far
+     */
+    private void collectFuzzyMatches(String normalized, int limit, Set<Integer> resultIds) {
+        Set<String> queryGrams = trigramsOf(normalized);
+        List<Set<Integer>> postingLists = new ArrayList<>(queryGrams.size());
+        for (String gram : queryGrams) {
+            Set<Integer> postings = trigrams.get(gram);
+            if (postings != null) {
+                postingLists.add(postings);
+            }
+        }
+        postingLists.sort(Comparator.comparingInt(Set::size));
+
+        // Trigrams missing from the index are the rarest of all, and leave fewer lists to draw candidates from
+        int minShared = Math.max(1, (int) Math.ceil(queryGrams.size() * minFuzzyScore));
+        int candidateLists = postingLists.size() - minShared + 1;
+
+        Set<Integer> scanned = new HashSet<>();
+        List<Map.Entry<Integer, Integer>> candidates = new ArrayList<>();
+        scan:
+        for (int i = 0; i < candidateLists; i++) {
+            for (Integer id : postingLists.get(i)) {
+                if (scanned.size() >= maxFuzzyCandidates) {
+                    break scan;
+                }
+                if (!scanned.add(id) || resultIds.contains(id)) {
+                    continue;
+                }
+                int shared = 0;
+                for (Set<Integer> postings : postingLists) {
+                    if (postings.contains(id)) {
+                        shared++;
+                    }
+                }
+                if (shared >= minShared) {
+                    candidates.add(new AbstractMap.SimpleImmutableEntry<>(id, shared));
+                }
+            }
+        }
+        candidates.sort((a, b) -> !a.getValue().equals(b.getValue()) ?
+                b.getValue() - a.getValue() :
+                a.getKey().compareTo(b.getKey()));
+
+        for (Map.Entry<Integer, Integer> candidate : candidates) {
+            if (resultIds.size() >= limit) {
+                break;
+            }
+            resultIds.add(candidate.getKey());
+        }
+    }
+
+    /**
+     * Indexes the terms and trigrams of the vehicle, the caller must hold the write lock
+     *
+     * @param vehicle the vehicle to index
+     */
+    private void insert(Vehicle vehicle) {
+        Integer id = vehicle.getId();
+        vehicles.put(id, vehicle);
+        for (String term : termsOf(vehicle)) {
+            TrieNode node = root;
+            for (char c : term.toCharArray()) {
+                node = node.children.computeIfAbsent(c, key -> new TrieNode());
+            }
+            node.ids.add(id);
+        }
+        for (String gram : trigramsOf(searchableText(vehicle))) {
+            trigrams.computeIfAbsent(gram, key -> new TreeSet<>()).add(id);
+        }
+    }
+
+    /**
+     * Unindexes the terms and trigrams of the vehicle, pruning trie branches left empty, the caller must hold the
+     * write lock
+     *
+     * @param vehicle the previously indexed vehicle
+     */
+    private void delete(Vehicle vehicle) {
+        Integer id = vehicle.getId();
+        vehicles.remove(id);
+        for (String term : termsOf(vehicle)) {
+            removeTerm(root, term, 0, id);
+        }
+        for (String gram : trigramsOf(searchableText(vehicle))) {
+            Set<Integer> postings = trigrams.get(gram);
+            if (postings != null) {
+                postings.remove(id);
+                if (postings.isEmpty()) {
+                    trigrams.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recursively removes the id from the terminal node of the term
+     *
+     * @param node the current trie node
+     * @param term the term being removed
+     * @param depth the index of the character of the term under the current node
+     * @param id the id of the vehicle to remove
+     * @return whether the current node became empty and can be pruned by its parent
+     */
+    private boolean removeTerm(TrieNode node, String term, int depth, Integer id) {
+        if (depth == term.length()) {
+            node.ids.remove(id);
+        } else {
+            char c = term.charAt(depth);
+            TrieNode child = node.children.get(c);
+            if (child != null && removeTerm(child, term, depth + 1, id)) {
+                node.children.remove(c);
+            }
+        }
+        return node.ids.isEmpty() && node.children.isEmpty();
+    }
+
+    /**
+     * Checks that every query token is a prefix of one of the vehicle terms
+     *
+     * @param vehicle the candidate vehicle
+     * @param tokens the normalized words of the query
+     * @return whether the vehicle matches the full query
+     */
+    private boolean matchesAllTokens(Vehicle vehicle, String[] tokens) {
+        Set<String> terms = termsOf(vehicle);
+        for (int i = 1; i < tokens.length; i++) {
+            boolean matched = false;
+            for (String term : terms) {
+                if (term.startsWith(tokens[i])) {
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gives the terms inserted into the trie for a vehicle: the full make and model plus each of their words
+     *
+     * @param vehicle the vehicle to get the terms of
+     * @return the set of normalized terms
+     */
+    private static Set<String> termsOf(Vehicle vehicle) {
+        Set<String> terms = new HashSet<>();
+        for (String value : new String[]{vehicle.getMake(), vehicle.getModel()}) {
+            String normalized = normalize(value);
+            terms.add(normalized);
+            terms.addAll(Arrays.asList(normalized.split(" ")));
+        }
+        return terms;
+    }
+
+    /**
+     * Gives the text the trigrams of a vehicle are computed from
+     *
+     * @param vehicle the vehicle to get the text of
+     * @return the normalized make and model separated by a space
+     */
+    private static String searchableText(Vehicle vehicle) {
+        return normalize(vehicle.getMake()) + " " + normalize(vehicle.getModel());
+    }
+
+    /**
+     * Gives the trigrams of each word of the text, padded so short words still produce trigrams
+     *
+     * @param text the normalized text
+     * @return the set of trigrams of the text
+     */
+    private static Set<String> trigramsOf(String text) {
+        Set<String> grams = new HashSet<>();
+        for (String word : text.split(" ")) {
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                grams.add(padded.substring(i, i + 3));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Lower cases the text and collapses its whitespace so lookups are case and spacing insensitive
+     *
+     * @param text the text to normalize
+     * @return the normalized text
+     */
+    private static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+}
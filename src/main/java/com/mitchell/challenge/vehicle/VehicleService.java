@@ -1,14 +1,22 @@
 package com.mitchell.challenge.vehicle;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 /**
  * Service class for vehicle application.
@@ -28,18 +36,183 @@ public class VehicleService {
     private final String noIdRequestString = "Cannot change vehicle properties without ID";
     private final String idTakenString = "ID of vehicle already exists in database";
     private final String idNotExistString = "ID of vehicle does not exist in the database";
+    private final String emptySearchString = "Search query must not be empty";
+    private final String searchLimitInvalidString = "Search limit must be between 1 and 100";
+    private final String statsGroupInvalidString = "Stats can only be grouped by year, make and model";
+    private final String bulkNoFilterString = "Bulk delete requires at least one of year, make or model";
+    private final String bulkEmptyString = "Bulk update requires a non-empty list of vehicles";
+    private final String bulkNullVehicleString = "Bulk update list must not contain null vehicles";
+    private final String bulkLimitString = "Bulk operation exceeds the limit of %d vehicles";
+    private final String sortInvalidString = "Vehicles can only be sorted by id, year, make and model";
+    private final String orderInvalidString = "Sort order must be asc or desc";
+    private final String fieldsInvalidString = "Fields must be a comma separated list of id, year, make and model";
+    private final String lookupEmptyString = "Lookup requires a non-empty list of ids";
+    private final String lookupLimitString = "Lookup exceeds the limit of %d ids";
+    private final String snapshotNameInvalidString = "Snapshot name must be made of letters, digits, dots, dashes " +
+            "and underscores, and must not start with a dot";
+    private final String snapshotNotFoundString = "Snapshot does not exist";
+    private final String snapshotInvalidString = "Snapshot file is invalid: %s";
+    private final String snapshotFailedString = "Snapshot file could not be accessed";
+    private final String writeQueueFullString = "Too many pending writes, retry later";
+
+    // The fields of a vehicle which can be selected by a projection
+    private static final List<String> vehicleFields =
+            Collections.unmodifiableList(Arrays.asList("id", "year", "make", "model"));
+
+    // Number of locks the writes of single vehicles are spread over by id
+    private static final int writeLockStripes = 64;
 
     // Variable for the vehicle repository which to make queries from
-    private final VehicleRepository vehicleRepository;
+    private final VehicleStore vehicleRepository;
+
+    // The in-memory make and model index used for search, kept in sync on every write
+    private final VehicleSearchIndex vehicleSearchIndex;
+
+    // The incrementally maintained counts used for aggregate requests
+    private final VehicleStatistics vehicleStatistics;
+
+    // Every in-memory structure derived from the vehicle table, notified after each write
+    private final List<VehicleChangeListener> changeListeners;
+
+    // The maximum number of vehicles a single bulk update or delete may affect
+    private final int bulkMaxAffected;
+
+    // The snapshot replica serving reads when read replica mode is enabled, null otherwise
+    private final VehicleReadReplica readReplica;
+
+    // The processor merging and sorting result sets, in parallel for large ones
+    private final VehicleResultProcessor resultProcessor;
+
+    // The maximum number of ids a single lookup may request
+    private final int lookupMaxIds;
+
+    // The group coalescing identical concurrent database reads
+    private final VehicleSingleFlight singleFlight;
+
+    // The store of the snapshot files
+    private final VehicleSnapshotStore snapshotStore;
+
+    // The number of vehicles inserted per batch when restoring a snapshot
+    private final int snapshotBatchSize;
+
+    // The write-behind buffer of creates when write-behind mode is enabled, null otherwise
+    private final VehicleWriteBehind writeBehind;
+
+    // The ids of every vehicle when write-behind mode is enabled, null otherwise
+    private final VehicleIdIndex vehicleIds;
+
+    // The tracer the service stages of sampled requests are recorded in
+    private final VehicleTracer tracer;
+
+    // The materialized results of the hot filter combinations, and the counts of every combination requested
+    private final VehicleMaterializedViews materializedViews;
+
+    // Lock held shared by the writes of a single vehicle, and exclusively by the writes spanning many vehicles
+    private final ReadWriteLock bulkWriteLock = new ReentrantReadWriteLock();
+
+    // Locks serializing the writes of vehicles whose ids fall in the same stripe
+    private final Object[] vehicleWriteLocks = new Object[writeLockStripes];
 
     /**
      * Constructs the vehicle service with repository access.
      *
      * @param vehicleRepository the vehicle repository class dependency injected in
+     * @param vehicleSearchIndex the vehicle search index dependency injected in
+     * @param vehicleStatistics the vehicle statistics dependency injected in
+     * @param changeListeners the listeners to notify of writes dependency injected in
+     * @param bulkMaxAffected the safety cap on vehicles affected by a bulk operation, from configuration
+     * @param readReplica the read replica dependency injected in if read replica mode is enabled
+     * @param resultProcessor the result processor dependency injected in
+     * @param lookupMaxIds the maximum number of ids of a lookup, from configuration
+     * @param singleFlight the single-flight group dependency injected in
+     * @param snapshotStore the snapshot store dependency injected in
+     * @param snapshotBatchSize the number of vehicles inserted per batch on restore, from configuration
+     * @param writeBehind the write-behind buffer dependency injected in if write-behind mode is enabled
+     * @param vehicleIds the id index dependency injected in if write-behind mode is enabled
+     * @param tracer the tracer dependency injected in
+     * @param materializedViews the materialized views dependency injected in
      */
     @Autowired
-    public VehicleService(VehicleRepository vehicleRepository) {
+    public VehicleService(VehicleStore vehicleRepository,
+                          VehicleSearchIndex vehicleSearchIndex,
+                          VehicleStatistics vehicleStatistics,
+                          List<VehicleChangeListener> changeListeners,
+                          @Value("${vehicle.bulk.max-affected:100000}") int bulkMaxAffected,
+                          Optional<VehicleReadReplica> readReplica,
+                          VehicleResultProcessor resultProcessor,
+                          @Value("${vehicle.lookup.max-ids:5000}") int lookupMaxIds,
+                          VehicleSingleFlight singleFlight,
+                          VehicleSnapshotStore snapshotStore,
+                          @Value("${vehicle.snapshot.batch-size:10000}") int snapshotBatchSize,
+                          Optional<VehicleWriteBehind> writeBehind,
+                          Optional<VehicleIdIndex> vehicleIds,
+                          VehicleTracer tracer,
+                          VehicleMaterializedViews materializedViews) {
         this.vehicleRepository = vehicleRepository;
+        this.vehicleSearchIndex = vehicleSearchIndex;
+        this.vehicleStatistics = vehicleStatistics;
+        this.changeListeners = changeListeners;
+        this.bulkMaxAffected = bulkMaxAffected;
+        this.readReplica = readReplica.orElse(null);
+        this.resultProcessor = resultProcessor;
+        this.lookupMaxIds = lookupMaxIds;
+        this.singleFlight = singleFlight;
+        this.snapshotStore = snapshotStore;
+        this.snapshotBatchSize = snapshotBatchSize;
+        this.writeBehind = writeBehind.orElse(null);
+        this.vehicleIds = vehicleIds.orElse(null);
+        this.tracer = tracer;
+        this.materializedViews = materializedViews;
+        for (int i = 0; i < vehicleWriteLocks.length; i++) {
+            vehicleWriteLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Loads the vehicles already in the database into every change listener once the application context is ready
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void initializeListeners() {
+        writeAll(() -> {
+            List<Vehicle> vehicles = vehicleRepository.getAllVehicles();
+            changeListeners.forEach(listener -> listener.vehiclesLoaded(vehicles));
+            return null;
+        });
+    }
+
+    /**
+     * Runs a write of a single vehicle, after any other write of the same vehicle and outside of bulk writes, so the
+     * change listeners see the writes of each vehicle in the same order as the database while writes of different
+     * vehicles run concurrently
+     *
+     * @param id the id of the vehicle written
+     * @param write the write, including the notification of the change listeners
+     */
+    private void writeVehicle(Integer id, Runnable write) {
+        bulkWriteLock.readLock().lock();
+        try {
+            synchronized (vehicleWriteLocks[Math.floorMod(id.hashCode(), vehicleWriteLocks.length)]) {
+                write.run();
+            }
+        } finally {
+            bulkWriteLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a write spanning many vehicles, alone
+     *
+     * @param write the write, including the notification of the change listeners
+     * @param <T> the type of the result of the write
+     * @return the result of the write
+     */
+    private <T> T writeAll(Supplier<T> write) {
+        bulkWriteLock.writeLock().lock();
+        try {
+            return write.get();
+        } finally {
+            bulkWriteLock.writeLock().unlock();
+        }
     }
 
     /**
@@ -55,78 +228,347 @@ public class VehicleService {
     /**
      * Gets all the vehicles of the database, or filter the get by year, make, or model.
      *
-     * If multiple parameters are passed in, the matching lists will conglomerate.
+     * If multiple parameters are passed in, the matching lists will conglomerate. Without a sort field, vehicles
+     * matching the year come first, then the make, then the model, each in id order.
      *
      * @param year the year value of the vehicle
      * @param make the make of the vehicle (manufacturer)
      * @param model the model of the vehicle
+     * @param sort the field to sort the vehicles by, or null to keep the filter order
+     * @param order the sort order, asc or desc, ascending if null
      * @return the list of vehicles that matches the restrictions, or all vehicles if no
      * restrictions
      */
-    List<Vehicle> getVehicles(Integer year, String make, String model) {
-        List<Vehicle> resultList = new ArrayList<>();
-        boolean allExist = false;
+    List<Vehicle> getVehicles(Integer year, String make, String model, String sort, String order) {
+        validateSort(sort, order);
+        List<Vehicle> resultList;
+        try (VehicleTracer.Span span = tracer.span("service.find")) {
+            resultList = findVehicles(year, make, model);
+            span.tag("vehicles", resultList.size());
+        }
+        if (sort != null) {
+            try (VehicleTracer.Span span = tracer.span("service.sort").tag("sort", sort)) {
+                resultList = resultProcessor.sort(resultList, sort, "desc".equals(order));
+            }
+        }
+        return resultList;
+    }
 
-        // All vehicles exists flag
-        if (year == null && make == null && model == null) {
-            allExist = true;
+    /**
+     * Gets only the requested fields of the vehicles, in the same order as the full vehicles would be returned.
+     *
+     * The projection is pushed down to the database so only the requested columns are read and no vehicle objects
+     * are built, and identical concurrent projections share a single query. It is applied to the vehicles read in
+     * memory when the filter combination has a materialized view, when read replica mode is enabled, and in
+     * write-behind mode so the queued vehicles are merged in without waiting for them to be inserted. Every request is
+     * counted towards the materialized view suggestions.
+     *
+     * @param year the year value of the vehicle
+     * @param make the make of the vehicle (manufacturer)
+     * @param model the model of the vehicle
+     * @param sort the field to sort the vehicles by, or null to keep the filter order
+     * @param order the sort order, asc or desc, ascending if null
+     * @param fields the comma separated fields to return
+     * @return a map of the requested fields for each matching vehicle
+     */
+    List<Map<String, Object>> getVehicleFields(
+            Integer year, String make, String model, String sort, String order, String fields) {
+        validateSort(sort, order);
+        List<String> columns = parseFields(fields);
+        boolean descending = "desc".equals(order);
+        if (readReplica != null || writeBehind != null) {
+            return projectAll(getVehicles(year, make, model, sort, order), columns);
         }
 
-        // Append to list vehicles that are unique and contains the filtered year
-        if (year != null) {
-            List <Vehicle> tmpResult = vehicleRepository.getVehiclesByYear(year);
-            for(Vehicle cur: tmpResult) {
-                if(!resultList.contains(cur)) {
-                    resultList.add(cur);
-                }
-            }
+        // Serve the declared hot filter combinations from their materialized results, counting every request
+        List<Vehicle> materialized = materializedViews.getVehicles(year, make, model);
+        if (materialized != null) {
+            return projectAll(sort != null ? resultProcessor.sort(materialized, sort, descending) : materialized,
+                    columns);
         }
+        return singleFlight.execute(
+                () -> vehicleRepository.getVehicleFields(columns, year, make, model, sort, descending),
+                "fields", columns, year, make, model, sort, descending);
+    }
 
-        // Append to list vehicles that are unique and contains the filtered make
-        if (make != null) {
-            List <Vehicle> tmpResult = vehicleRepository.getVehiclesByMake(make);
-            for(Vehicle cur: tmpResult) {
-                if(!resultList.contains(cur)) {
-                    resultList.add(cur);
-                }
+    /**
+     * Gets only the requested fields of the specific vehicle
+     *
+     * @param id the identity of the vehicle in the database
+     * @param fields the comma separated fields to return
+     * @return a map of the requested fields of the vehicle
+     */
+    Map<String, Object> getVehicleFieldsById(Integer id, String fields) {
+        List<String> columns = parseFields(fields);
+        if (readReplica != null || writeBehind != null) {
+            return project(getVehicleById(id), columns);
+        }
+        try {
+            return singleFlight.execute(() -> vehicleRepository.getVehicleFieldsById(columns, id),
+                    "vehicleFields", columns, id);
+        } catch (DataAccessException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, nonExistGetString);
+        }
+    }
+
+    /**
+     * Checks the sort field and order passed in from the request
+     *
+     * @param sort the field to sort by, or null
+     * @param order the sort order, or null
+     */
+    private void validateSort(String sort, String order) {
+        if (sort != null && !VehicleResultProcessor.sortFields.contains(sort)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, sortInvalidString);
+        }
+        if (order != null && !order.equals("asc") && !order.equals("desc")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, orderInvalidString);
+        }
+    }
+
+    /**
+     * Parses the comma separated fields passed in from the request, only vehicle fields are accepted
+     *
+     * @param fields the comma separated fields
+     * @return the distinct fields in requested order
+     */
+    private List<String> parseFields(String fields) {
+        Set<String> columns = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String column = field.trim();
+            if (!vehicleFields.contains(column)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, fieldsInvalidString);
             }
+            columns.add(column);
         }
+        return new ArrayList<>(columns);
+    }
 
-        // Append to list vehicles that are unique and contains the filtered model
-        if (model != null) {
-            List <Vehicle> tmpResult = vehicleRepository.getVehiclesByModel(model);
-            for(Vehicle cur: tmpResult) {
-                if(!resultList.contains(cur)) {
-                    resultList.add(cur);
-                }
+    /**
+     * Copies the requested fields of each vehicle into a map
+     *
+     * @param vehicles the vehicles to project
+     * @param fields the fields to copy
+     * @return a map of the requested fields of each vehicle, in the order of the vehicles
+     */
+    private static List<Map<String, Object>> projectAll(List<Vehicle> vehicles, List<String> fields) {
+        List<Map<String, Object>> rows = new ArrayList<>(vehicles.size());
+        for (Vehicle vehicle : vehicles) {
+            rows.add(project(vehicle, fields));
+        }
+        return rows;
+    }
+
+    /**
+     * Copies the requested fields of the vehicle into a map
+     *
+     * @param vehicle the vehicle to project
+     * @param fields the fields to copy
+     * @return a map of the requested fields of the vehicle
+     */
+    private static Map<String, Object> project(Vehicle vehicle, List<String> fields) {
+        Map<String, Object> row = new LinkedHashMap<>(fields.size() * 2);
+        for (String field : fields) {
+            switch (field) {
+                case "id":
+                    row.put(field, vehicle.getId());
+                    break;
+                case "year":
+                    row.put(field, vehicle.getYear());
+                    break;
+                case "make":
+                    row.put(field, vehicle.getMake());
+                    break;
+                default:
+                    row.put(field, vehicle.getModel());
             }
         }
+        return row;
+    }
+
+    /**
+     * Gets the vehicles matching any of the filters, from their materialized view if the combination has one, or
+     * from the read replica if enabled or the database otherwise.
+     *
+     * Identical concurrent database reads share a single set of queries.
+     *
+     * @param year the year value of the vehicle
+     * @param make the make of the vehicle (manufacturer)
+     * @param model the model of the vehicle
+     * @return the list of vehicles that matches the restrictions, or all vehicles if no
+     * restrictions
+     */
+    private List<Vehicle> findVehicles(Integer year, String make, String model) {
+        // Serve the declared hot filter combinations from their materialized results
+        List<Vehicle> materialized = materializedViews.getVehicles(year, make, model);
+        if (materialized != null) {
+            return materialized;
+        }
+
+        // Serve the read from the latest snapshot when read replica mode is enabled
+        if (readReplica != null) {
+            return readReplica.getVehicles(year, make, model);
+        }
+        return singleFlight.execute(() -> queryVehicles(year, make, model), "vehicles", year, make, model);
+    }
+
+    /**
+     * Queries the database for the vehicles matching any of the filters
+     *
+     * @param year the year value of the vehicle
+     * @param make the make of the vehicle (manufacturer)
+     * @param model the model of the vehicle
+     * @return the list of vehicles that matches the restrictions, or all vehicles if no
+     * restrictions
+     */
+    private List<Vehicle> queryVehicles(Integer year, String make, String model) {
+        // Vehicles acknowledged in write-behind mode but not inserted yet, merged into each query result
+        Collection<Vehicle> pending = pendingVehicles();
 
         // Gets all vehicles from the database if no restrictions applied in the request
-        if (allExist) {
-            resultList.addAll(vehicleRepository.getAllVehicles());
+        if (year == null && make == null && model == null) {
+            return VehicleWriteBehind.merge(vehicleRepository.getAllVehicles(), pending, vehicle -> true);
+        }
+
+        // Append the vehicles matching each filter, keeping the first occurrence of vehicles matching several
+        List<List<Vehicle>> matches = new ArrayList<>();
+        if (year != null) {
+            matches.add(VehicleWriteBehind.merge(vehicleRepository.getVehiclesByYear(year), pending,
+                    vehicle -> year.equals(vehicle.getYear())));
+        }
+        if (make != null) {
+            matches.add(VehicleWriteBehind.merge(vehicleRepository.getVehiclesByMake(make), pending,
+                    vehicle -> make.equals(vehicle.getMake())));
+        }
+        if (model != null) {
+            matches.add(VehicleWriteBehind.merge(vehicleRepository.getVehiclesByModel(model), pending,
+                    vehicle -> model.equals(vehicle.getModel())));
+        }
+        try (VehicleTracer.Span span = tracer.span("service.union")) {
+            List<Vehicle> union = resultProcessor.union(matches);
+            span.tag("vehicles", union.size());
+            return union;
         }
-        return resultList;
     }
 
     /**
-     * Gets the specific vehicle in the database by the id value
+     * Gets the specific vehicle in the database by the id value, sharing the query of identical concurrent reads
      *
      * @param id the identity of the vehicle in the database
      * @return the vehicle result
      */
     Vehicle getVehicleById(Integer id) {
+        if (readReplica != null) {
+            return Optional.ofNullable(readReplica.getVehicleById(id))
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, nonExistGetString));
+        }
+        Vehicle pending = writeBehind != null ? writeBehind.getPending(id) : null;
+        if (pending != null) {
+            return pending;
+        }
         try {
-            return vehicleRepository.getVehicleById(id);
+            return singleFlight.execute(() -> vehicleRepository.getVehicleById(id), "vehicle", id);
         } catch (DataAccessException e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, nonExistGetString);
         }
     }
 
+    /**
+     * Gets many vehicles by id at once, with IN queries of up to 1024 ids or snapshot lookups in read replica mode
+     *
+     * Ids without a matching vehicle are reported in the result instead of failing the whole lookup.
+     *
+     * @param ids the ids of the vehicles to get, repeated ids are only looked up once
+     * @return the vehicles found and the ids not found, both in requested order
+     */
+    VehicleLookupResult lookupVehicles(List<Integer> ids) {
+        if (ids == null || ids.isEmpty() || ids.contains(null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, lookupEmptyString);
+        }
+        if (ids.size() > lookupMaxIds) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format(lookupLimitString, lookupMaxIds));
+        }
+
+        Set<Integer> distinctIds = new LinkedHashSet<>(ids);
+        Map<Integer, Vehicle> vehiclesById = new HashMap<>();
+        if (readReplica != null) {
+            for (Integer id : distinctIds) {
+                Optional.ofNullable(readReplica.getVehicleById(id)).ifPresent(vehicle -> vehiclesById.put(id, vehicle));
+            }
+        } else {
+            Collection<Vehicle> pending = pendingVehicles();
+            for (Vehicle vehicle : vehicleRepository.getVehiclesByIds(distinctIds)) {
+                vehiclesById.put(vehicle.getId(), vehicle);
+            }
+            for (Vehicle vehicle : pending) {
+                if (distinctIds.contains(vehicle.getId())) {
+                    vehiclesById.putIfAbsent(vehicle.getId(), vehicle);
+                }
+            }
+        }
+
+        List<Vehicle> found = new ArrayList<>(vehiclesById.size());
+        List<Integer> notFound = new ArrayList<>();
+        for (Integer id : distinctIds) {
+            Vehicle vehicle = vehiclesById.get(id);
+            if (vehicle != null) {
+                found.add(vehicle);
+            } else {
+                notFound.add(id);
+            }
+        }
+        return new VehicleLookupResult(found, notFound);
+    }
+
+    /**
+     * Searches vehicles by prefix or approximate match on their make and model
+     *
+     * @param query the text to search for
+     * @param limit the maximum number of vehicles to return
+     * @return the best matching vehicles, prefix matches first
+     */
+    List<Vehicle> searchVehicles(String query, Integer limit) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, emptySearchString);
+        }
+        if (limit < 1 || limit > 100) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, searchLimitInvalidString);
+        }
+        return vehicleSearchIndex.search(query, limit);
+    }
+
+    /**
+     * Gets the vehicle counts grouped by the given fields, served from incrementally maintained counters
+     *
+     * @param groupBy the comma separated fields to group by, or null for the total count only
+     * @return the report of the total and per group counts
+     */
+    VehicleStatistics.Report getVehicleStats(String groupBy) {
+        List<String> fields = groupBy == null || groupBy.trim().isEmpty() ?
+                Collections.emptyList() :
+                Arrays.asList(groupBy.trim().split("\\s*,\\s*"));
+        for (String field : fields) {
+            if (!VehicleStatistics.groupingFields.contains(field)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, statsGroupInvalidString);
+            }
+        }
+        return vehicleStatistics.report(fields);
+    }
+
+    /**
+     * Gets the materialized views along with the filter combinations suggested for materialization
+     *
+     * @return the report of the views and suggestions
+     */
+    VehicleMaterializedViews.Report getMaterializedViews() {
+        return materializedViews.report();
+    }
+
     /**
      * Creates a vehicle and puts it in a database
      *
-     * Can error out if incorrect request body is passed in, such as conflicting id, missing values, or invalid year
+     * Can error out if incorrect request body is passed in, such as conflicting id, missing values, or invalid year.
+     * Writes of the same vehicle are serialized so the change listeners see them in the same order as the database.
      *
      * @param vehicle the vehicle to be created in the database
      */
@@ -142,18 +584,31 @@ public class VehicleService {
                 vehicleMake == null ||
                 vehicleModel == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, missingValuesRequestString);
+        }
+
+        writeVehicle(vehicleId, () -> {
 
-            // Ensure that the id is not taken
-        } else if (!vehicleRepository.isIdTaken(vehicle.getId())) {
+            // Ensure that the id is not taken, in write-behind mode from the ids in memory, which include the vehicles
+            // waiting to be inserted, so the create is acknowledged without any database round trip
+            if (vehicleIds != null ? vehicleIds.contains(vehicleId) : vehicleRepository.isIdTaken(vehicleId)) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, idTakenString);
+            }
 
             // Ensure the year is valid based on the valid year method
             if (!isValidYear(vehicleYear)) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, vehicleYearInvalidString);
             }
-            vehicleRepository.createVehicle(vehicle);
-        } else {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, idTakenString);
-        }
+
+            // Acknowledge once queued in write-behind mode, pushing back on the client when the queue is full
+            if (writeBehind != null) {
+                if (!writeBehind.enqueue(vehicle)) {
+                    throw new RetryLaterException(writeQueueFullString, writeBehind.getRetryAfterSeconds());
+                }
+            } else {
+                vehicleRepository.createVehicle(vehicle);
+            }
+            changeListeners.forEach(listener -> listener.vehicleCreated(vehicle));
+        });
     }
 
     /**
@@ -174,30 +629,42 @@ public class VehicleService {
         if (vehicleId == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, noIdRequestString);
         }
-
-        // Check if the id is taken, id must exist to modify values
-        if (!vehicleRepository.isIdTaken(vehicleId)) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, idNotExistString);
+        // Check if the modified year is within range of valid years before touching the database
+        if (vehicleYear != null && !isValidYear(vehicleYear)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, vehicleYearInvalidString);
         }
 
-        // Update year if exists modified value in request body
-        Optional.ofNullable(vehicleYear)
-                .ifPresent(year -> {
+        writeVehicle(vehicleId, () -> {
+            flushPendingWrites();
 
-                    // Check if the modified year is within range of valid years
-                    if (!isValidYear(year)) {
-                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, vehicleYearInvalidString);
-                    }
-                    vehicleRepository.updateVehicleYear(vehicleId, vehicleYear);
-                });
+            // The id must exist to modify values, its current values are passed on to the listeners
+            Vehicle previous;
+            try {
+                previous = vehicleRepository.getVehicleById(vehicleId);
+            } catch (DataAccessException e) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, idNotExistString);
+            }
 
-        // Update the make of the vehicle if modified value exists
-        Optional.ofNullable(vehicleMake)
-                .ifPresent(make -> vehicleRepository.updateVehicleMake(vehicleId, make));
+            // Update year if exists modified value in request body
+            Optional.ofNullable(vehicleYear)
+                    .ifPresent(year -> vehicleRepository.updateVehicleYear(vehicleId, year));
 
-        // Update the model of the vehicle if modified value exists
-        Optional.ofNullable(vehicleModel)
-                .ifPresent(model -> vehicleRepository.updateVehicleModel(vehicleId, model));
+            // Update the make of the vehicle if modified value exists
+            Optional.ofNullable(vehicleMake)
+                    .ifPresent(make -> vehicleRepository.updateVehicleMake(vehicleId, make));
+
+            // Update the model of the vehicle if modified value exists
+            Optional.ofNullable(vehicleModel)
+                    .ifPresent(model -> vehicleRepository.updateVehicleModel(vehicleId, model));
+
+            // Notify the listeners of the vehicle values before and after the update, without reading it back
+            Vehicle updated = new Vehicle(
+                    vehicleId,
+                    Optional.ofNullable(vehicleYear).orElse(previous.getYear()),
+                    Optional.ofNullable(vehicleMake).orElse(previous.getMake()),
+                    Optional.ofNullable(vehicleModel).orElse(previous.getModel()));
+            changeListeners.forEach(listener -> listener.vehicleUpdated(previous, updated));
+        });
     }
 
     /**
@@ -208,10 +675,230 @@ public class VehicleService {
      * @param id the id of the vehicle to be deleted
      */
     void deleteVehicle(Integer id) {
+        writeVehicle(id, () -> {
+            flushPendingWrites();
+            Vehicle previous;
+            try {
+                previous = vehicleRepository.getVehicleById(id);
+            } catch (DataAccessException e) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, nonExistDeleteString);
+            }
             int successStatus = vehicleRepository.deleteVehicle(id);
             if (successStatus == 0) {
                 throw new ResponseStatusException(HttpStatus.NOT_FOUND, nonExistDeleteString);
             }
+            changeListeners.forEach(listener -> listener.vehicleDeleted(previous));
+        });
     }
 
+    /**
+     * Applies partial updates to many vehicles in one batched transaction
+     *
+     * Every vehicle must be non-null with an id and a valid year if a year is given, otherwise nothing is updated. Ids
+     * that do not exist in the database are skipped and not counted as affected.
+     *
+     * @param vehicles the vehicles to be modified, along with their modified values
+     * @return the number of vehicles updated
+     */
+    VehicleBulkResult updateVehicles(List<Vehicle> vehicles) {
+        if (vehicles == null || vehicles.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, bulkEmptyString);
+        }
+        return writeAll(() -> {
+            flushPendingWrites();
+            if (vehicles.size() > bulkMaxAffected) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        String.format(bulkLimitString, bulkMaxAffected));
+            }
+
+            // Validate the whole batch before touching the database
+            Set<Integer> ids = new LinkedHashSet<>();
+            for (Vehicle vehicle : vehicles) {
+                if (vehicle == null) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, bulkNullVehicleString);
+                }
+                if (vehicle.getId() == null) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, noIdRequestString);
+                }
+                if (vehicle.getYear() != null && !isValidYear(vehicle.getYear())) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, vehicleYearInvalidString);
+                }
+                ids.add(vehicle.getId());
+            }
+
+            // Compute the values after the update of every existing vehicle, later entries win for repeated ids
+            Map<Integer, Vehicle> previous = new LinkedHashMap<>();
+            for (Vehicle vehicle : vehicleRepository.getVehiclesByIds(ids)) {
+                previous.put(vehicle.getId(), vehicle);
+            }
+            Map<Integer, Vehicle> updated = new LinkedHashMap<>(previous);
+            List<Vehicle> existing = new ArrayList<>();
+            for (Vehicle vehicle : vehicles) {
+                Vehicle current = updated.get(vehicle.getId());
+                if (current != null) {
+                    existing.add(vehicle);
+                    updated.put(vehicle.getId(), new Vehicle(
+                            vehicle.getId(),
+                            Optional.ofNullable(vehicle.getYear()).orElse(current.getYear()),
+                            Optional.ofNullable(vehicle.getMake()).orElse(current.getMake()),
+                            Optional.ofNullable(vehicle.getModel()).orElse(current.getModel())));
+                }
+            }
+
+            if (!existing.isEmpty()) {
+                vehicleRepository.updateVehicles(existing);
+            }
+            for (Vehicle vehicle : previous.values()) {
+                changeListeners.forEach(listener -> listener.vehicleUpdated(vehicle, updated.get(vehicle.getId())));
+            }
+            return new VehicleBulkResult(previous.size());
+        });
+    }
+
+    /**
+     * Deletes every vehicle matching all of the given filters in a single statement
+     *
+     * At least one filter is required, and nothing is deleted if more vehicles than the configured cap would be.
+     *
+     * @param year the year of the vehicles to delete, or null
+     * @param make the make of the vehicles to delete, or null
+     * @param model the model of the vehicles to delete, or null
+     * @return the number of vehicles deleted
+     */
+    VehicleBulkResult deleteVehicles(Integer year, String make, String model) {
+        if (year == null && make == null && model == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, bulkNoFilterString);
+        }
+        return writeAll(() -> {
+            flushPendingWrites();
+
+            List<Vehicle> deleted = vehicleRepository.deleteVehiclesMatchingAll(year, make, model, bulkMaxAffected);
+            if (deleted == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        String.format(bulkLimitString, bulkMaxAffected));
+            }
+            for (Vehicle vehicle : deleted) {
+                changeListeners.forEach(listener -> listener.vehicleDeleted(vehicle));
+            }
+            return new VehicleBulkResult(deleted.size());
+        });
+    }
+
+    /**
+     * Writes every vehicle of the database to a binary snapshot file, streaming the rows in id order
+     *
+     * @param name the name of the snapshot, replaced if it already exists
+     * @return the number of vehicles and the size of the snapshot written
+     */
+    VehicleSnapshotResult exportSnapshot(String name) {
+        validateSnapshotName(name);
+        flushPendingWrites();
+        try {
+            return snapshotStore.write(name, vehicleRepository::forEachVehicle);
+        } catch (IOException | UncheckedIOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, snapshotFailedString, e);
+        }
+    }
+
+    /**
+     * Replaces every vehicle of the database with the vehicles of a snapshot file.
+     *
+     * The file is checked in full before the table is touched, then loaded with batched inserts without the per
+     * vehicle checks of the create route, in the same transaction as the deletion of the previous vehicles. The change
+     * listeners are rebuilt from the loaded vehicles, or from the database if the restore fails.
+     *
+     * @param name the name of the snapshot to restore
+     * @return the number of vehicles and the size of the snapshot restored
+     */
+    VehicleSnapshotResult restoreSnapshot(String name) {
+        validateSnapshotName(name);
+        VehicleSnapshotStore.Snapshot snapshot;
+        try {
+            snapshot = snapshotStore.open(name);
+        } catch (NoSuchFileException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, snapshotNotFoundString);
+        } catch (VehicleSnapshotStore.InvalidSnapshotException e) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    String.format(snapshotInvalidString, e.getMessage()));
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, snapshotFailedString, e);
+        }
+
+        return writeAll(() -> {
+            List<Vehicle> vehicles = new ArrayList<>(snapshot.getVehicleCount());
+            flushPendingWrites();
+            try {
+                vehicleRepository.replaceAllVehicles(batches -> snapshot.forEachBatch(snapshotBatchSize, batch -> {
+                    batches.accept(batch);
+                    vehicles.addAll(batch);
+                }));
+                changeListeners.forEach(listener -> listener.vehiclesLoaded(vehicles));
+            } catch (RuntimeException e) {
+                // The table holds either its previous vehicles or the snapshot, rebuild the listeners from it
+                try {
+                    initializeListeners();
+                } catch (RuntimeException reloadFailure) {
+                    e.addSuppressed(reloadFailure);
+                }
+                throw e;
+            }
+            return new VehicleSnapshotResult(name, snapshot.getVehicleCount(), snapshot.getFileBytes());
+        });
+    }
+
+    /**
+     * Checks the snapshot name passed in from the request, so it cannot point outside the snapshot directory
+     *
+     * @param name the name of the snapshot
+     */
+    private void validateSnapshotName(String name) {
+        if (!VehicleSnapshotStore.isValidName(name)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, snapshotNameInvalidString);
+        }
+    }
+
+    /**
+     * Copies the vehicles acknowledged in write-behind mode but not inserted yet, before querying the database
+     *
+     * @return the pending vehicles, empty if write-behind mode is disabled
+     */
+    private Collection<Vehicle> pendingVehicles() {
+        return writeBehind != null ? writeBehind.pendingVehicles() : Collections.emptyList();
+    }
+
+    /**
+     * Inserts every vehicle acknowledged in write-behind mode, before writes and reads which cannot use the overlay
+     */
+    private void flushPendingWrites() {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * Error for requests refused under load, telling the client when to retry with a Retry-After header
+     */
+    static class RetryLaterException extends ResponseStatusException {
+
+        // The number of seconds the client should wait before retrying
+        private final int retryAfterSeconds;
+
+        /**
+         * Constructs the 503 Service Unavailable error
+         *
+         * @param reason the reason the request was refused
+         * @param retryAfterSeconds the number of seconds the client should wait before retrying
+         */
+        RetryLaterException(String reason, int retryAfterSeconds) {
+            super(HttpStatus.SERVICE_UNAVAILABLE, reason);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        @Override
+        public HttpHeaders getResponseHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            return headers;
+        }
+    }
 }
@@ -0,0 +1,130 @@
+package com.mitchell.challenge.vehicle;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent reads, so a burst of the same request runs a single repository call whose result is
+ * shared by every caller waiting on it.
+ *
+ * Only calls in flight are shared, nothing is cached once the call returns. Every write bumps a generation number that
+ * is part of the key, so a read arriving after a write completed never joins a call started before it and always sees
+ * the write.
+ */
+@Component
+public class VehicleSingleFlight implements VehicleChangeListener {
+
+    // The calls in flight keyed by their request key and generation
+    private final ConcurrentMap<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    // The number of writes seen, part of every key so reads never span a write
+    private final AtomicLong generation = new AtomicLong();
+
+    // Whether reads are coalesced, when false every call runs its own loader
+    private final boolean enabled;
+
+    // The count of calls served from another caller's flight
+    private final Counter coalesced;
+
+    /**
+     * Constructs the single-flight group
+     *
+     * @param enabled whether identical concurrent reads are coalesced
+     * @param meterRegistry the registry the coalesced call counter is registered in
+     */
+    @Autowired
+    public VehicleSingleFlight(@Value("${vehicle.single-flight.enabled:true}") boolean enabled,
+                               MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.coalesced = meterRegistry.counter("vehicle.single-flight.coalesced");
+    }
+
+    @Override
+    public void vehiclesLoaded(Collection<Vehicle> vehicles) {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void vehicleCreated(Vehicle vehicle) {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void vehicleUpdated(Vehicle previous, Vehicle updated) {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void vehicleDeleted(Vehicle vehicle) {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Runs the loader, or waits for the identical call already in flight and returns its result.
+     *
+     * The result is shared between callers, so it must not be modified. Exceptions thrown by the loader are rethrown
+     * to every caller of the flight.
+     *
+     * @param loader the call to run when no identical call is in flight
+     * @param key the parts identifying the call, such as the operation name and its arguments, which may be null
+     * @param <T> the result type of the call
+     * @return the result of the loader
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(Supplier<T> loader, Object... key) {
+        if (!enabled) {
+            return loader.get();
+        }
+        List<Object> flightKey = new ArrayList<>(Arrays.asList(key));
+        flightKey.add(generation.get());
+
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw rethrow(e.getCause());
+            }
+        }
+
+        try {
+            T result = loader.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    /**
+     * Rethrows the failure of the flight in a waiting caller
+     *
+     * @param cause the exception thrown by the loader, always unchecked
+     * @return never returns, declared so callers can throw the result
+     */
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw (RuntimeException) cause;
+    }
+}
@@ -0,0 +1,56 @@
+package com.mitchell.challenge.vehicle;
+
+/**
+ * Response body of the snapshot export and restore routes
+ */
+public class VehicleSnapshotResult {
+
+    // The name of the snapshot
+    private final String name;
+
+    // The number of vehicles written to or restored from the snapshot
+    private final int vehicles;
+
+    // The size of the snapshot file in bytes
+    private final long bytes;
+
+    /**
+     * Constructs the result of a snapshot operation
+     *
+     * @param name the name of the snapshot
+     * @param vehicles the number of vehicles in the snapshot
+     * @param bytes the size of the snapshot file
+     */
+    public VehicleSnapshotResult(String name, int vehicles, long bytes) {
+        this.name = name;
+        this.vehicles = vehicles;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Gets the name of the snapshot
+     *
+     * @return the snapshot name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of vehicles in the snapshot
+     *
+     * @return the vehicle count
+     */
+    public int getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * Gets the size of the snapshot file
+     *
+     * @return the size in bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,326 @@
+package com.mitchell.challenge.vehicle;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes vehicle snapshot files in the snapshot directory.
+ *
+ * A snapshot is a binary file laid out as follows, all numbers being big-endian:
+ *  - a header of two ints: the magic number and the format version
+ *  - one record of four ints per vehicle in ascending id order: id, year, make string index and model string index
+ *  - the string table, each distinct make and model once as an unsigned short byte length followed by its UTF-8 bytes
+ *  - a footer of two ints: the vehicle count and the string count
+ *  - the CRC32 of every preceding byte, as an int
+ *
+ * Makes and models repeat across many vehicles, so storing them once keeps the file close to 16 bytes per vehicle.
+ * The counts and the string table come after the records, so files are written in a single pass with only the string
+ * table held in memory. Files are written to a temporary file first and moved into place, so a snapshot is either
+ * complete or absent. Snapshots are read by memory-mapping the file, and are fully checked before any vehicle is handed
+ * out.
+ */
+@Component
+public class VehicleSnapshotStore {
+
+    // The first int of every snapshot file, "VEHS" in ASCII
+    private static final int magic = 0x56454853;
+
+    // The version of the file format written
+    private static final int version = 2;
+
+    // Size of the header in bytes
+    private static final int headerBytes = 8;
+
+    // Size of the footer in bytes
+    private static final int footerBytes = 8;
+
+    // Size of a vehicle record in bytes
+    private static final int recordBytes = 16;
+
+    // Size of the checksum trailer in bytes
+    private static final int checksumBytes = 4;
+
+    // Longest make or model in bytes, as its length is stored in an unsigned short
+    private static final int maxStringBytes = 0xFFFF;
+
+    // The names snapshots may be given, which cannot escape the snapshot directory
+    private static final Pattern namePattern = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]{0,63}");
+
+    // The directory every snapshot file is kept in
+    private final Path directory;
+
+    /**
+     * Constructs the store over the snapshot directory, created on the first export
+     *
+     * @param directory the path of the snapshot directory
+     */
+    @Autowired
+    public VehicleSnapshotStore(@Value("${vehicle.snapshot.directory:snapshots}") String directory) {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Checks whether the snapshot name is allowed
+     *
+     * @param name the name of the snapshot
+     * @return true if the name is made of letters, digits, dots, dashes and underscores and does not start with a dot
+     */
+    static boolean isValidName(String name) {
+        return name != null && namePattern.matcher(name).matches();
+    }
+
+    /**
+     * Writes a snapshot of the vehicles, replacing any snapshot with the same name
+     *
+     * The records are streamed to the file as the vehicles are passed on, and the checksum is updated as they go.
+     *
+     * @param name the name of the snapshot, which must be valid
+     * @param source the function passing every vehicle, in ascending id order, to the consumer it is given
+     * @return the number of vehicles and the size of the file written
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if a make or model is longer than 65535 bytes in UTF-8
+     */
+    VehicleSnapshotResult write(String name, Consumer<Consumer<Vehicle>> source) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(name);
+        Path temporary = Files.createTempFile(directory, ".", ".tmp");
+        int vehicleCount;
+        try {
+            CRC32 crc = new CRC32();
+            Map<String, Integer> stringIndexes = new HashMap<>();
+            List<byte[]> strings = new ArrayList<>();
+            int[] count = new int[1];
+            try (OutputStream fileOutput = Files.newOutputStream(temporary)) {
+                DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(new CheckedOutputStream(fileOutput, crc), 1 << 16));
+                output.writeInt(magic);
+                output.writeInt(version);
+                source.accept(vehicle -> {
+                    try {
+                        output.writeInt(vehicle.getId());
+                        output.writeInt(vehicle.getYear());
+                        output.writeInt(stringIndex(vehicle.getMake(), stringIndexes, strings));
+                        output.writeInt(stringIndex(vehicle.getModel(), stringIndexes, strings));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count[0]++;
+                });
+                for (byte[] bytes : strings) {
+                    output.writeShort(bytes.length);
+                    output.write(bytes);
+                }
+                output.writeInt(count[0]);
+                output.writeInt(strings.size());
+                output.flush();
+                fileOutput.write(ByteBuffer.allocate(checksumBytes).putInt((int) crc.getValue()).array());
+            }
+            vehicleCount = count[0];
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return new VehicleSnapshotResult(name, vehicleCount, Files.size(file));
+    }
+
+    /**
+     * Gives the index of a make or model in the string table, adding it on its first use
+     *
+     * @param string the make or model
+     * @param stringIndexes the index of every string already in the table
+     * @param strings the UTF-8 bytes of the strings of the table, in index order
+     * @return the index of the string
+     * @throws IllegalArgumentException if the string is longer than 65535 bytes in UTF-8
+     */
+    private static int stringIndex(String string, Map<String, Integer> stringIndexes, List<byte[]> strings) {
+        Integer index = stringIndexes.get(string);
+        if (index == null) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > maxStringBytes) {
+                throw new IllegalArgumentException(
+                        "Make or model of " + bytes.length + " bytes exceeds the snapshot limit of " + maxStringBytes);
+            }
+            index = strings.size();
+            strings.add(bytes);
+            stringIndexes.put(string, index);
+        }
+        return index;
+    }
+
+    /**
+     * Maps a snapshot file into memory and checks its checksum and structure
+     *
+     * @param name the name of the snapshot, which must be valid
+     * @return the checked snapshot
+     * @throws NoSuchFileException if there is no snapshot with that name
+     * @throws IOException if the file cannot be read, or is not a valid snapshot
+     */
+    Snapshot open(String name) throws IOException {
+        Path file = directory.resolve(name);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < headerBytes + footerBytes + checksumBytes || size > Integer.MAX_VALUE) {
+                throw new InvalidSnapshotException("Snapshot size is invalid");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        int bodyBytes = buffer.capacity() - checksumBytes;
+        ByteBuffer body = buffer.duplicate();
+        body.limit(bodyBytes);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(bodyBytes)) {
+            throw new InvalidSnapshotException("Snapshot checksum does not match");
+        }
+
+        if (buffer.getInt(0) != magic || buffer.getInt(4) != version) {
+            throw new InvalidSnapshotException("Snapshot format is not supported");
+        }
+        int footerStart = bodyBytes - footerBytes;
+        int vehicleCount = buffer.getInt(footerStart);
+        int stringCount = buffer.getInt(footerStart + 4);
+        int recordsStart = headerBytes;
+        if (vehicleCount < 0 || stringCount < 0
+                || (long) vehicleCount * recordBytes + (long) stringCount * 2 > footerStart - recordsStart) {
+            throw new InvalidSnapshotException("Snapshot footer is invalid");
+        }
+        int recordsEnd = recordsStart + vehicleCount * recordBytes;
+
+        buffer.position(recordsEnd);
+        buffer.limit(footerStart);
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            int length = buffer.remaining() >= 2 ? Short.toUnsignedInt(buffer.getShort()) : -1;
+            if (length < 0 || length > buffer.remaining()) {
+                throw new InvalidSnapshotException("Snapshot string table is truncated");
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (buffer.hasRemaining()) {
+            throw new InvalidSnapshotException("Snapshot string table does not match the string count");
+        }
+
+        // Check every record up front, so a restore never starts on a file it cannot finish
+        long previousId = Long.MIN_VALUE;
+        for (int position = recordsStart; position < recordsEnd; position += recordBytes) {
+            int id = buffer.getInt(position);
+            int make = buffer.getInt(position + 8);
+            int model = buffer.getInt(position + 12);
+            if (id <= previousId) {
+                throw new InvalidSnapshotException("Snapshot ids are not unique and ascending");
+            }
+            if (make < 0 || make >= stringCount || model < 0 || model >= stringCount) {
+                throw new InvalidSnapshotException("Snapshot record refers to an unknown string");
+            }
+            previousId = id;
+        }
+        return new Snapshot(buffer, recordsStart, vehicleCount, strings, buffer.capacity());
+    }
+
+    /**
+     * A snapshot file mapped into memory and checked, whose vehicles are decoded on demand
+     */
+    static final class Snapshot {
+
+        // The mapped file
+        private final ByteBuffer buffer;
+
+        // Offset of the first record
+        private final int recordsStart;
+
+        // Number of vehicles in the snapshot
+        private final int vehicleCount;
+
+        // The string table the records refer to
+        private final String[] strings;
+
+        // Size of the file in bytes
+        private final long fileBytes;
+
+        private Snapshot(ByteBuffer buffer, int recordsStart, int vehicleCount, String[] strings, long fileBytes) {
+            this.buffer = buffer;
+            this.recordsStart = recordsStart;
+            this.vehicleCount = vehicleCount;
+            this.strings = strings;
+            this.fileBytes = fileBytes;
+        }
+
+        /**
+         * Gets the number of vehicles in the snapshot
+         *
+         * @return the vehicle count
+         */
+        int getVehicleCount() {
+            return vehicleCount;
+        }
+
+        /**
+         * Gets the size of the snapshot file
+         *
+         * @return the size in bytes
+         */
+        long getFileBytes() {
+            return fileBytes;
+        }
+
+        /**
+         * Decodes the vehicles in ascending id order and passes them on in batches
+         *
+         * @param batchSize the maximum number of vehicles of a batch
+         * @param consumer the consumer of each batch
+         */
+        void forEachBatch(int batchSize, Consumer<List<Vehicle>> consumer) {
+            List<Vehicle> batch = new ArrayList<>(Math.min(batchSize, vehicleCount));
+            for (int i = 0; i < vehicleCount; i++) {
+                int position = recordsStart + i * recordBytes;
+                batch.add(new Vehicle(
+                        buffer.getInt(position),
+                        buffer.getInt(position + 4),
+                        strings[buffer.getInt(position + 8)],
+                        strings[buffer.getInt(position + 12)]));
+                if (batch.size() == batchSize) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(Math.min(batchSize, vehicleCount - i - 1));
+                }
+            }
+            if (!batch.isEmpty()) {
+                consumer.accept(batch);
+            }
+        }
+    }
+
+    /**
+     * Thrown when a file is not a valid snapshot, because it is corrupt, truncated or of another format
+     */
+    static final class InvalidSnapshotException extends IOException {
+
+        // Version of the serialized form of the exception
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs the exception
+         *
+         * @param message the reason the snapshot is invalid
+         */
+        InvalidSnapshotException(String message) {
+            super(message);
+        }
+    }
+}
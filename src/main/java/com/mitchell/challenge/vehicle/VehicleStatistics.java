@@ -0,0 +1,216 @@
+package com.mitchell.challenge.vehicle;
+
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Incrementally maintained vehicle counts grouped by year, make and model.
+ *
+ * A counter map is kept for every combination of the three grouping fields, so that an aggregate request only walks
+ * the groups of the requested combination instead of the rows of the vehicle table. Counters are updated through the
+ * service change notifications, and groups whose count drops to zero are removed.
+ *
+ * A write updates the total and every grouping one after the other, so writes hold a lock in shared mode while they
+ * count and a report copies its grouping while holding it exclusively. A report therefore sees every write either in
+ * full or not at all, while writes of different vehicles still count concurrently.
+ */
+@Component
+public class VehicleStatistics implements VehicleChangeListener {
+
+    // The fields vehicles can be grouped by, the index of a field is its bit in a grouping mask
+    static final List<String> groupingFields = Collections.unmodifiableList(Arrays.asList("year", "make", "model"));
+
+    // Total number of vehicles in the database
+    private final AtomicLong total = new AtomicLong();
+
+    // Counters for each grouping mask, keyed by the grouped values in year, make, model order
+    private final List<Map<List<Object>, Long>> counters = new ArrayList<>();
+
+    // Lock held shared by the writes being counted, and exclusively by loads and by reports copying the counters
+    private final ReadWriteLock countLock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructs the statistics with one empty counter map per combination of grouping fields
+     */
+    public VehicleStatistics() {
+        for (int mask = 0; mask < 1 << groupingFields.size(); mask++) {
+            counters.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * The result of an aggregate request, serialized as the response body of the stats route
+     */
+    public static class Report {
+        private final long total;
+        private final List<String> groupBy;
+        private final List<Map<String, Object>> groups;
+
+        Report(long total, List<String> groupBy, List<Map<String, Object>> groups) {
+            this.total = total;
+            this.groupBy = groupBy;
+            this.groups = groups;
+        }
+
+        /**
+         * Gets the total number of vehicles
+         *
+         * @return the vehicle count
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * Gets the fields the vehicles were grouped by
+         *
+         * @return the grouping fields in requested order
+         */
+        public List<String> getGroupBy() {
+            return groupBy;
+        }
+
+        /**
+         * Gets the groups, each holding the grouped field values and the count of vehicles in the group
+         *
+         * @return the groups sorted by their field values
+         */
+        public List<Map<String, Object>> getGroups() {
+            return groups;
+        }
+    }
+
+    @Override
+    public void vehiclesLoaded(Collection<Vehicle> vehicles) {
+        countLock.writeLock().lock();
+        try {
+            for (Map<List<Object>, Long> counter : counters) {
+                counter.clear();
+            }
+            total.set(0);
+            for (Vehicle vehicle : vehicles) {
+                count(vehicle, 1);
+            }
+        } finally {
+            countLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void vehicleCreated(Vehicle vehicle) {
+        countLock.readLock().lock();
+        try {
+            count(vehicle, 1);
+        } finally {
+            countLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void vehicleUpdated(Vehicle previous, Vehicle updated) {
+        countLock.readLock().lock();
+        try {
+            count(previous, -1);
+            count(updated, 1);
+        } finally {
+            countLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void vehicleDeleted(Vehicle vehicle) {
+        countLock.readLock().lock();
+        try {
+            count(vehicle, -1);
+        } finally {
+            countLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the vehicle counts grouped by the given fields
+     *
+     * @param fields the fields to group by, must be a subset of year, make and model, may be empty for total only
+     * @return the report of the total and per group counts
+     */
+    Report report(List<String> fields) {
+        int mask = 0;
+        for (String field : fields) {
+            mask |= 1 << groupingFields.indexOf(field);
+        }
+
+        // Copy the total and the grouping together, so both reflect the same writes
+        long totalCount;
+        List<Map.Entry<List<Object>, Long>> entries;
+        countLock.writeLock().lock();
+        try {
+            totalCount = total.get();
+            entries = new ArrayList<>();
+            for (Map.Entry<List<Object>, Long> entry : counters.get(mask).entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            }
+        } finally {
+            countLock.writeLock().unlock();
+        }
+        entries.sort((a, b) -> compareKeys(a.getKey(), b.getKey()));
+
+        List<Map<String, Object>> groups = new ArrayList<>(entries.size());
+        if (mask != 0) {
+            for (Map.Entry<List<Object>, Long> entry : entries) {
+                Map<String, Object> group = new LinkedHashMap<>();
+                for (String field : fields) {
+                    group.put(field, entry.getKey().get(Integer.bitCount(mask & ((1 << groupingFields.indexOf(field)) - 1))));
+                }
+                group.put("count", entry.getValue());
+                groups.add(group);
+            }
+        }
+        return new Report(totalCount, fields, groups);
+    }
+
+    /**
+     * Adds the delta to the counter of every group the vehicle belongs to, the caller must hold the count lock
+     *
+     * @param vehicle the vehicle being counted
+     * @param delta 1 when the vehicle is added, -1 when it is removed
+     */
+    private void count(Vehicle vehicle, long delta) {
+        Object[] values = {vehicle.getYear(), vehicle.getMake(), vehicle.getModel()};
+        total.addAndGet(delta);
+        for (int mask = 1; mask < counters.size(); mask++) {
+            List<Object> key = new ArrayList<>(Integer.bitCount(mask));
+            for (int field = 0; field < values.length; field++) {
+                if ((mask & 1 << field) != 0) {
+                    key.add(values[field]);
+                }
+            }
+            counters.get(mask).compute(key, (k, count) -> {
+                long updated = (count == null ? 0 : count) + delta;
+                return updated <= 0 ? null : updated;
+            });
+        }
+    }
+
+    /**
+     * Compares two group keys value by value
+     *
+     * @param a the first group key
+     * @param b the second group key
+     * @return the ordering of the keys
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareKeys(List<Object> a, List<Object> b) {
+        for (int i = 0; i < a.size(); i++) {
+            int comparison = ((Comparable) a.get(i)).compareTo(b.get(i));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,189 @@
+package com.mitchell.challenge.vehicle;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Data access of the vehicle table, as used by the service.
+ *
+ * Implemented by the repository over the application database, and by the sharded repository spreading the table over
+ * several databases. The service only depends on this class, so either can be injected without the sharded repository
+ * inheriting a database connection it does not have.
+ */
+public abstract class VehicleStore {
+
+    /**
+     * Gets all the vehicles in database
+     *
+     * @return the list of all vehicles in the database, in id order
+     */
+    abstract List<Vehicle> getAllVehicles();
+
+    /**
+     * Gets the vehicle with the specific id in the database
+     *
+     * @param id the id which to search for the vehicle
+     * @return the vehicle retrieved
+     */
+    abstract Vehicle getVehicleById(Integer id);
+
+    /**
+     * Gets the list of vehicles that matches the specific year
+     *
+     * @param year the year of the vehicles to retrieve
+     * @return the list of matching vehicles, in id order
+     */
+    abstract List<Vehicle> getVehiclesByYear(Integer year);
+
+    /**
+     * Gets the list of vehicles that matches the specific make
+     *
+     * @param make the make of the vehicles to retrieve
+     * @return the list of matching vehicles, in id order
+     */
+    abstract List<Vehicle> getVehiclesByMake(String make);
+
+    /**
+     * Gets the list of vehicles filtered by their model
+     *
+     * @param model the specific model which to fetch the list of vehicles
+     * @return the list of matching vehicles, in id order
+     */
+    abstract List<Vehicle> getVehiclesByModel(String model);
+
+    /**
+     * Gets the list of vehicles with the specific ids, ids not in the database are skipped
+     *
+     * @param ids the ids of the vehicles to retrieve
+     * @return the list of matching vehicles
+     */
+    abstract List<Vehicle> getVehiclesByIds(Collection<Integer> ids);
+
+    /**
+     * Gets the list of vehicles matching every given filter, null filters are ignored
+     *
+     * @param year the year of the vehicles to retrieve, or null
+     * @param make the make of the vehicles to retrieve, or null
+     * @param model the model of the vehicles to retrieve, or null
+     * @return the list of matching vehicles, in id order
+     */
+    abstract List<Vehicle> getVehiclesMatchingAll(Integer year, String make, String model);
+
+    /**
+     * Gets only the given columns of the vehicles matching any of the filters, without building vehicle objects
+     *
+     * @param fields the columns to select, must be vehicle columns
+     * @param year the year filter, or null
+     * @param make the make filter, or null
+     * @param model the model filter, or null
+     * @param sort the column to sort by, or null to keep the filter order
+     * @param descending whether to sort in descending order
+     * @return a map of column name to value for each matching vehicle, columns in the requested order
+     */
+    abstract List<Map<String, Object>> getVehicleFields(
+            List<String> fields, Integer year, String make, String model, String sort, boolean descending);
+
+    /**
+     * Gets only the given columns of the vehicle with the specific id, without building a vehicle object
+     *
+     * @param fields the columns to select, must be vehicle columns
+     * @param id the id which to search for the vehicle
+     * @return a map of column name to value, columns in the requested order
+     */
+    abstract Map<String, Object> getVehicleFieldsById(List<String> fields, Integer id);
+
+    /**
+     * Creates a vehicle in the database based on the vehicle request body passed in
+     *
+     * @param vehicle the vehicle object representation of the request body
+     * @return the success value of the creation, 0 for failure
+     */
+    abstract int createVehicle(Vehicle vehicle);
+
+    /**
+     * Updates the year of the vehicle with the specific id in the database
+     *
+     * @param id the id of the vehicle which to do the update
+     * @param year the updated year of the vehicle
+     * @return the success value of the update, 0 for failure
+     */
+    abstract int updateVehicleYear(Integer id, Integer year);
+
+    /**
+     * Updates the make of the vehicle with the specific id in the database
+     *
+     * @param id the id of the vehicle which to do the update
+     * @param make the updated make of the vehicle
+     * @return the success value of the update, 0 for failure
+     */
+    abstract int updateVehicleMake(Integer id, String make);
+
+    /**
+     * Updates the model of the vehicle with the specific id in the database
+     *
+     * @param id the id of the vehicle which to do the update
+     * @param model the updated model of the vehicle
+     * @return the success value of the update, 0 for failure
+     */
+    abstract int updateVehicleModel(Integer id, String model);
+
+    /**
+     * Inserts every vehicle in one batched transaction, without checking for existing ids
+     *
+     * @param vehicles the vehicles to insert
+     * @return the number of rows inserted by each statement of the batch
+     */
+    abstract int[] createVehicles(List<Vehicle> vehicles);
+
+    /**
+     * Applies the partial updates of every vehicle in one batched transaction, null values are left unchanged
+     *
+     * @param vehicles the vehicles holding the id to update along with the values to modify
+     * @return the number of rows updated by each statement of the batch
+     */
+    abstract int[] updateVehicles(List<Vehicle> vehicles);
+
+    /**
+     * Checks if the id of the vehicle with the certain id is taken
+     *
+     * @param id the id of the vehicle which to do the checking
+     * @return boolean representation of whether the id is taken
+     */
+    abstract boolean isIdTaken(int id);
+
+    /**
+     * Delete the vehicle from the database by the given id
+     *
+     * @param id the id of the vehicle which to perform the deletion
+     * @return the success value of the deletion, 0 for failure
+     */
+    abstract int deleteVehicle(Integer id);
+
+    /**
+     * Replaces every vehicle of the table in one transaction, so the table is left unchanged if any insert fails
+     *
+     * @param source the function passing the new vehicles, in batches, to the consumer it is given
+     */
+    abstract void replaceAllVehicles(Consumer<Consumer<List<Vehicle>>> source);
+
+    /**
+     * Calls the action with every vehicle of the table in id order, one row at a time without building a list
+     *
+     * @param action the action to call with each vehicle
+     */
+    abstract void forEachVehicle(Consumer<Vehicle> action);
+
+    /**
+     * Delete every vehicle matching all the given filters, null filters are ignored, unless more than the cap match
+     *
+     * @param year the year of the vehicles to delete, or null
+     * @param make the make of the vehicles to delete, or null
+     * @param model the model of the vehicles to delete, or null
+     * @param maxDeleted the most vehicles that may be deleted
+     * @return the vehicles deleted as they were before the deletion, or null if more than the cap matched and nothing
+     * was deleted
+     */
+    abstract List<Vehicle> deleteVehiclesMatchingAll(Integer year, String make, String model, int maxDeleted);
+}
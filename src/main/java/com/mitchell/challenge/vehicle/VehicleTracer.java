@@ -0,0 +1,275 @@
+package com.mitchell.challenge.vehicle;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Lightweight tracer of the request hot path, recording nested timed spans on the request thread.
+ *
+ * A sampled request opens a trace, and the controller, service and repository stages open spans inside it, the
+ * repository spans carrying the SQL run and the rows it returned or changed. The finished trace is exported as one JSON
+ * line to the log or to a file. Requests which are not sampled pay a thread-local lookup per span and nothing else.
+ */
+@Component
+public class VehicleTracer {
+
+    // Logger the traces are exported to with the log exporter, and export failures are reported to
+    private static final Logger logger = LoggerFactory.getLogger(VehicleTracer.class);
+
+    // The span returned when the current request is not traced, closing it does nothing
+    private static final Span noopSpan = new Span(null, null, -1, 0);
+
+    // The trace of the request running on each thread, unset when the request is not sampled
+    private final ThreadLocal<Trace> currentTrace = new ThreadLocal<>();
+
+    // Share of requests traced, from 0 for none to 1 for all
+    private final double sampleRate;
+
+    // The writer of the file exporter, null with the log exporter
+    private final BufferedWriter fileWriter;
+
+    // Mapper writing the traces as JSON
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Constructs the tracer with its sampling rate and exporter
+     *
+     * @param sampleRate the share of requests traced, from 0 to 1
+     * @param exporter where finished traces are written, log or file
+     * @param file the file traces are appended to with the file exporter
+     * @throws IOException if the trace file cannot be opened
+     */
+    @Autowired
+    public VehicleTracer(@Value("${vehicle.tracing.sample-rate:0}") double sampleRate,
+                         @Value("${vehicle.tracing.exporter:log}") String exporter,
+                         @Value("${vehicle.tracing.file:traces.jsonl}") String file) throws IOException {
+        this.sampleRate = sampleRate;
+        if ("file".equals(exporter)) {
+            Path path = Paths.get(file).toAbsolutePath();
+            Files.createDirectories(path.getParent());
+            this.fileWriter = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } else {
+            this.fileWriter = null;
+        }
+    }
+
+    /**
+     * Closes the trace file of the file exporter
+     *
+     * @throws IOException if the file cannot be flushed
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        if (fileWriter != null) {
+            synchronized (fileWriter) {
+                fileWriter.close();
+            }
+        }
+    }
+
+    /**
+     * Starts a trace on the current thread if the request is sampled
+     *
+     * @param name the name of the trace, such as the method and path of the request
+     * @param forced whether the request asked to be traced regardless of the sampling rate
+     * @return the id of the trace started, or null if the request is not traced
+     */
+    String startTrace(String name, boolean forced) {
+        if (!forced && (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return null;
+        }
+        Trace trace = new Trace(name);
+        currentTrace.set(trace);
+        return trace.id;
+    }
+
+    /**
+     * Checks whether the current thread is running a traced request
+     *
+     * @return true if a trace is open
+     */
+    boolean isTracing() {
+        return currentTrace.get() != null;
+    }
+
+    /**
+     * Opens a span nested in the innermost open span of the current trace, to be closed once its stage is done
+     *
+     * @param name the name of the stage
+     * @return the open span, or a span doing nothing if the request is not traced
+     */
+    Span span(String name) {
+        Trace trace = currentTrace.get();
+        if (trace == null) {
+            return noopSpan;
+        }
+        Span span = new Span(trace, name, trace.open.isEmpty() ? 0 : trace.open.peek().index, trace.spans.size());
+        trace.spans.add(span);
+        trace.open.push(span);
+        return span;
+    }
+
+    /**
+     * Closes every span still open along with the root span, ends the trace of the current thread and exports it
+     *
+     * @param status the HTTP status of the response
+     */
+    void finishTrace(int status) {
+        Trace trace = currentTrace.get();
+        if (trace == null) {
+            return;
+        }
+        currentTrace.remove();
+        trace.root.tag("status", status);
+        trace.root.close();
+        export(trace);
+    }
+
+    /**
+     * Writes the trace as a JSON line to the configured exporter
+     *
+     * @param trace the finished trace
+     */
+    private void export(Trace trace) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("traceId", trace.id);
+        json.put("name", trace.root.name);
+        json.put("durationMicros", trace.root.durationNanos / 1000);
+        json.putAll(trace.root.attributes);
+        List<Map<String, Object>> spans = new ArrayList<>();
+        for (Span span : trace.spans.subList(1, trace.spans.size())) {
+            Map<String, Object> spanJson = new LinkedHashMap<>();
+            spanJson.put("name", span.name);
+            // Point to the parent by its position in the spans array, -1 for the spans of the request itself
+            spanJson.put("parent", span.parent - 1);
+            spanJson.put("startMicros", (span.startNanos - trace.root.startNanos) / 1000);
+            spanJson.put("durationMicros", span.durationNanos / 1000);
+            spanJson.putAll(span.attributes);
+            spans.add(spanJson);
+        }
+        json.put("spans", spans);
+
+        try {
+            String line = objectMapper.writeValueAsString(json);
+            if (fileWriter == null) {
+                logger.info(line);
+                return;
+            }
+            synchronized (fileWriter) {
+                fileWriter.write(line);
+                fileWriter.newLine();
+                fileWriter.flush();
+            }
+        } catch (JsonProcessingException e) {
+            logger.warn("Trace {} could not be serialized", trace.id, e);
+        } catch (IOException e) {
+            logger.warn("Trace {} could not be written", trace.id, e);
+        }
+    }
+
+    /**
+     * The spans of one request, opened and closed on the request thread only
+     */
+    private static final class Trace {
+
+        // Random id of the trace, returned to the client so the trace can be found
+        private final String id = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+        // Every span of the trace in opening order, the root span first
+        private final List<Span> spans = new ArrayList<>();
+
+        // The spans open, innermost first
+        private final Deque<Span> open = new ArrayDeque<>();
+
+        // The span covering the whole request
+        private final Span root;
+
+        private Trace(String name) {
+            root = new Span(this, name, -1, 0);
+            spans.add(root);
+            open.push(root);
+        }
+    }
+
+    /**
+     * A timed stage of a trace, closed with try-with-resources
+     */
+    static final class Span implements AutoCloseable {
+
+        // The trace of the span, null for the span of untraced requests
+        private final Trace trace;
+
+        // The name of the stage
+        private final String name;
+
+        // The index of the parent span in the trace, -1 for the root
+        private final int parent;
+
+        // The index of the span in the trace
+        private final int index;
+
+        // The time the span was opened
+        private final long startNanos = System.nanoTime();
+
+        // The duration of the span, set when closed
+        private long durationNanos = -1;
+
+        // Attributes of the stage, such as the SQL run and the row count
+        private final Map<String, Object> attributes = new LinkedHashMap<>();
+
+        private Span(Trace trace, String name, int parent, int index) {
+            this.trace = trace;
+            this.name = name;
+            this.parent = parent;
+            this.index = index;
+        }
+
+        /**
+         * Attaches an attribute to the span
+         *
+         * @param key the name of the attribute
+         * @param value the value of the attribute
+         * @return this span
+         */
+        Span tag(String key, Object value) {
+            if (trace != null) {
+                attributes.put(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * Ends the stage, closing any span left open inside it
+         */
+        @Override
+        public void close() {
+            if (trace == null || durationNanos >= 0) {
+                return;
+            }
+            while (!trace.open.isEmpty()) {
+                Span innermost = trace.open.pop();
+                innermost.durationNanos = System.nanoTime() - innermost.startNanos;
+                if (innermost == this) {
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.mitchell.challenge.vehicle;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Opens and closes the traces of sampled requests around the controllers.
+ *
+ * The trace of a request has a controller span, covering the handler method along with the service and repository
+ * spans it opens, followed by a serialize span covering the conversion of the returned body to JSON. When
+ * vehicle.tracing.allow-forced is set, a request can ask to be traced regardless of sampling with the X-Trace header,
+ * otherwise the header is ignored so clients cannot make the server trace every request. The id of the trace is
+ * returned in the X-Trace-Id header.
+ */
+@ControllerAdvice
+public class VehicleTracingInterceptor implements HandlerInterceptor, WebMvcConfigurer, ResponseBodyAdvice<Object> {
+
+    // The header asking for the request to be traced
+    static final String traceHeader = "X-Trace";
+
+    // The header returning the id of the trace
+    static final String traceIdHeader = "X-Trace-Id";
+
+    // The request attributes holding the open controller and serialize spans
+    private static final String controllerSpanAttribute = VehicleTracingInterceptor.class.getName() + ".controller";
+    private static final String serializeSpanAttribute = VehicleTracingInterceptor.class.getName() + ".serialize";
+
+    // The tracer the spans are recorded in
+    private final VehicleTracer tracer;
+
+    // Whether the X-Trace header may force a request to be traced
+    private final boolean allowForced;
+
+    /**
+     * Constructs the interceptor
+     *
+     * @param tracer the tracer dependency injected in
+     * @param allowForced whether the X-Trace header may force a request to be traced regardless of sampling
+     */
+    @Autowired
+    public VehicleTracingInterceptor(VehicleTracer tracer,
+                                     @Value("${vehicle.tracing.allow-forced:false}") boolean allowForced) {
+        this.tracer = tracer;
+        this.allowForced = allowForced;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).addPathPatterns("/vehicles", "/vehicles/**", "/admin/**");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String traceId = tracer.startTrace(request.getMethod() + " " +
+                        (pattern != null ? pattern : request.getRequestURI()),
+                allowForced && "true".equalsIgnoreCase(request.getHeader(traceHeader)));
+        if (traceId != null) {
+            response.setHeader(traceIdHeader, traceId);
+            VehicleTracer.Span span = tracer.span("controller").tag("query", request.getQueryString());
+            if (handler instanceof HandlerMethod) {
+                span.tag("handler", ((HandlerMethod) handler).getMethod().getName());
+            }
+            request.setAttribute(controllerSpanAttribute, span);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return tracer.isTracing();
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (request instanceof ServletServerHttpRequest) {
+            HttpServletRequest servletRequest = ((ServletServerHttpRequest) request).getServletRequest();
+            closeSpan(servletRequest, controllerSpanAttribute);
+            servletRequest.setAttribute(serializeSpanAttribute, tracer.span("serialize"));
+        }
+        return body;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                           ModelAndView modelAndView) {
+        closeSpan(request, serializeSpanAttribute);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        tracer.finishTrace(response.getStatus());
+    }
+
+    /**
+     * Closes the span held in the request attribute, if any
+     *
+     * @param request the request holding the span
+     * @param attribute the name of the attribute
+     */
+    private static void closeSpan(HttpServletRequest request, String attribute) {
+        Object span = request.getAttribute(attribute);
+        if (span != null) {
+            request.removeAttribute(attribute);
+            ((VehicleTracer.Span) span).close();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.mitchell.challenge.vehicle;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Write-behind buffer of created vehicles, enabled with vehicle.write-behind.enabled.
+ *
+ * Validated creates are acknowledged once they are placed on a bounded queue, and a background thread inserts them
+ * into the database in batched transactions. Until a vehicle is inserted it stays in an overlay which the service
+ * merges into its reads, so clients always read their own writes. When the queue is full, creates are refused so the
+ * service can answer with 503 and Retry-After instead of buffering without bound. Updates, deletes and reads that
+ * cannot use the overlay flush the queue first.
+ *
+ * The change listeners are told of a create when it is acknowledged. A vehicle which cannot be inserted even on its
+ * own is reported to them as deleted, so they forget it, and counted in the vehicle.write-behind.failed-inserts meter.
+ */
+@Component
+@ConditionalOnProperty(name = "vehicle.write-behind.enabled", havingValue = "true")
+public class VehicleWriteBehind {
+
+    // Logger of the failed flushes
+    private static final Logger logger = LoggerFactory.getLogger(VehicleWriteBehind.class);
+
+    // The vehicles waiting to be inserted, in acknowledgement order
+    private final BlockingQueue<Vehicle> queue;
+
+    // The vehicles acknowledged but not inserted yet, keyed by id
+    private final ConcurrentMap<Integer, Vehicle> pending = new ConcurrentHashMap<>();
+
+    // Lock held while a batch is inserted, so a flush returns only once every earlier create is in the database
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // The thread flushing the queue in the background
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vehicle-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The repository the vehicles are inserted with
+    private final VehicleStore vehicleRepository;
+
+    // The maximum number of vehicles inserted per transaction
+    private final int batchSize;
+
+    // The number of seconds clients are told to wait when the queue is full
+    private final int retryAfterSeconds;
+
+    // The listeners told of the acknowledged vehicles which could not be inserted
+    private final List<VehicleChangeListener> changeListeners;
+
+    // The count of acknowledged vehicles which could not be inserted
+    private final Counter failedInserts;
+
+    /**
+     * Constructs the write-behind buffer and starts its background flushes
+     *
+     * @param vehicleRepository the vehicle repository dependency injected in
+     * @param queueCapacity the maximum number of vehicles waiting to be inserted
+     * @param batchSize the maximum number of vehicles inserted per transaction
+     * @param flushIntervalMillis the delay between background flushes
+     * @param retryAfterSeconds the number of seconds clients are told to wait when the queue is full
+     * @param changeListeners the listeners told of the vehicles which could not be inserted
+     * @param meterRegistry the registry the failed insert counter is registered in
+     */
+    @Autowired
+    public VehicleWriteBehind(VehicleStore vehicleRepository,
+                              @Value("${vehicle.write-behind.queue-capacity:10000}") int queueCapacity,
+                              @Value("${vehicle.write-behind.batch-size:500}") int batchSize,
+                              @Value("${vehicle.write-behind.flush-interval-millis:50}") long flushIntervalMillis,
+                              @Value("${vehicle.write-behind.retry-after-seconds:1}") int retryAfterSeconds,
+                              List<VehicleChangeListener> changeListeners,
+                              MeterRegistry meterRegistry) {
+        this.vehicleRepository = vehicleRepository;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.changeListeners = changeListeners;
+        this.failedInserts = meterRegistry.counter("vehicle.write-behind.failed-inserts");
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background flushes and inserts every vehicle still queued
+     */
+    @PreDestroy
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Gets the number of seconds clients should wait before retrying a refused create
+     *
+     * @return the retry delay in seconds
+     */
+    int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Queues a validated vehicle for insertion, making it visible to the overlay at once
+     *
+     * @param vehicle the vehicle to insert
+     * @return true if the vehicle was queued, false if the queue is full
+     */
+    boolean enqueue(Vehicle vehicle) {
+        // Add to the overlay first, a flush may insert the vehicle as soon as it is queued
+        pending.put(vehicle.getId(), vehicle);
+        if (!queue.offer(vehicle)) {
+            pending.remove(vehicle.getId(), vehicle);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the vehicle with the given id if it is waiting to be inserted
+     *
+     * @param id the id of the vehicle
+     * @return the pending vehicle, or null if there is none with that id
+     */
+    Vehicle getPending(Integer id) {
+        return pending.get(id);
+    }
+
+    /**
+     * Copies the vehicles waiting to be inserted, to be taken before querying the database so a vehicle inserted
+     * during the query is found in the copy or in the query result
+     *
+     * @return the pending vehicles
+     */
+    Collection<Vehicle> pendingVehicles() {
+        return pending.isEmpty() ? Collections.emptyList() : new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Adds the pending vehicles matching the filter to a database result, keeping it in id order
+     *
+     * @param vehicles the vehicles read from the database, in id order
+     * @param pendingVehicles the pending vehicles copied before the database was queried
+     * @param filter the condition of the query the vehicles were read with
+     * @return the vehicles with the matching pending vehicles added, without duplicates of vehicles inserted meanwhile
+     */
+    static List<Vehicle> merge(List<Vehicle> vehicles, Collection<Vehicle> pendingVehicles,
+                               Predicate<Vehicle> filter) {
+        if (pendingVehicles.isEmpty()) {
+            return vehicles;
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (Vehicle vehicle : vehicles) {
+            ids.add(vehicle.getId());
+        }
+        List<Vehicle> merged = new ArrayList<>(vehicles);
+        for (Vehicle vehicle : pendingVehicles) {
+            if (filter.test(vehicle) && !ids.contains(vehicle.getId())) {
+                merged.add(vehicle);
+            }
+        }
+        if (merged.size() == vehicles.size()) {
+            return vehicles;
+        }
+        merged.sort(Comparator.comparing(Vehicle::getId));
+        return merged;
+    }
+
+    /**
+     * Inserts every vehicle queued so far, waiting for any batch being inserted by the background thread
+     */
+    void flush() {
+        flushLock.lock();
+        try {
+            List<Vehicle> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                insert(batch);
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes from the background thread, logging failures so later flushes still run
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Write-behind flush failed", e);
+        }
+    }
+
+    /**
+     * Inserts a batch in one transaction, falling back to one insert per vehicle if the batch fails, and removes the
+     * vehicles from the overlay once they are in the database
+     *
+     * A vehicle failing on its own is reported as deleted to the change listeners before it leaves the overlay, so a
+     * new create of its id is only accepted once the listeners have forgotten it.
+     *
+     * @param batch the vehicles to insert
+     */
+    private void insert(List<Vehicle> batch) {
+        try {
+            vehicleRepository.createVehicles(batch);
+        } catch (RuntimeException batchFailure) {
+            for (Vehicle vehicle : batch) {
+                try {
+                    vehicleRepository.createVehicle(vehicle);
+                } catch (RuntimeException e) {
+                    logger.error("Dropping acknowledged vehicle {} which could not be inserted", vehicle.getId(), e);
+                    failedInserts.increment();
+                    changeListeners.forEach(listener -> listener.vehicleDeleted(vehicle));
+                }
+            }
+        }
+        for (Vehicle vehicle : batch) {
+            pending.remove(vehicle.getId(), vehicle);
+        }
+    }
+
+    /**
+     * Gets the number of acknowledged vehicles which could not be inserted since startup
+     *
+     * @return the failed insert count
+     */
+    long getFailedInserts() {
+        return (long) failedInserts.count();
+    }
+}
@@ -0,0 +1,9 @@
+-- Schema of the vehicle table where Hibernate does not create it: the fast-boot profile, shard databases and tests.
+-- Matches the Vehicle entity.
+CREATE TABLE IF NOT EXISTS vehicle (
+    id INTEGER NOT NULL,
+    make VARCHAR(255) NOT NULL,
+    model VARCHAR(255) NOT NULL,
+    year INTEGER NOT NULL,
+    PRIMARY KEY (id)
+);
@@ -0,0 +1,214 @@
+package com.mitchell.challenge.vehicle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the persistent vehicle trie, including ids at the edges of the int range and ids sharing trie paths
+ */
+public class PersistentVehicleMapTests {
+
+	// Ids at the edges of the int range, in ascending order
+	private static final int[] edgeIds = {Integer.MIN_VALUE, -1048576, -33, -32, -1, 0, 1, 31, 32, 1048576,
+			Integer.MAX_VALUE};
+
+	// Ids sharing every trie level but one with id 0, one per level from the leaves up
+	private static final int[] collidingIds = {0, 1, 1 << 5, 1 << 10, 1 << 15, 1 << 20, 1 << 25, 1 << 30};
+
+	/**
+	 * Builds a map holding a vehicle for each id
+	 *
+	 * @param ids the ids of the vehicles
+	 * @return the map of the vehicles
+	 */
+	private static PersistentVehicleMap mapOf(int... ids) {
+		PersistentVehicleMap map = PersistentVehicleMap.empty();
+		for (int id : ids) {
+			map = map.with(vehicle(id));
+		}
+		return map;
+	}
+
+	/**
+	 * Builds the test vehicle of an id
+	 *
+	 * @param id the id of the vehicle
+	 * @return the vehicle, whose model is its id
+	 */
+	private static Vehicle vehicle(int id) {
+		return new Vehicle(id, 2012, "Toyota", String.valueOf(id));
+	}
+
+	/**
+	 * Lists the ids of the map in iteration order
+	 *
+	 * @param map the map to iterate
+	 * @return the ids
+	 */
+	private static List<Integer> idsOf(PersistentVehicleMap map) {
+		List<Integer> ids = new ArrayList<>();
+		map.forEach(vehicle -> ids.add(vehicle.getId()));
+		return ids;
+	}
+
+	/**
+	 * Splits the spliterator until no part splits further
+	 *
+	 * @param spliterator the spliterator to split
+	 * @param parts the parts left, added in encounter order
+	 */
+	private static void splitFully(Spliterator<Vehicle> spliterator, List<Spliterator<Vehicle>> parts) {
+		Spliterator<Vehicle> prefix = spliterator.trySplit();
+		if (prefix == null) {
+			parts.add(spliterator);
+			return;
+		}
+		splitFully(prefix, parts);
+		splitFully(spliterator, parts);
+	}
+
+	/**
+	 * Tries the sign flip of the trie key, should order negative ids before zero and positive ids as unsigned keys
+	 */
+	@Test
+	public void expectKeysOrderedLikeIds() {
+		assertEquals(0, PersistentVehicleMap.keyOf(Integer.MIN_VALUE));
+		assertEquals(-1, PersistentVehicleMap.keyOf(Integer.MAX_VALUE));
+		for (int i = 1; i < edgeIds.length; i++) {
+			assertTrue(Integer.compareUnsigned(
+					PersistentVehicleMap.keyOf(edgeIds[i - 1]), PersistentVehicleMap.keyOf(edgeIds[i])) < 0);
+		}
+	}
+
+	/**
+	 * Tries to add vehicles with negative, zero and large ids in shuffled order, should find each by id and iterate
+	 * them in ascending id order
+	 */
+	@Test
+	public void expectEdgeIdsStoredInOrder() {
+		PersistentVehicleMap map = mapOf(0, Integer.MAX_VALUE, -1, 32, Integer.MIN_VALUE, 1, -32, 1048576, -33, 31,
+				-1048576);
+		assertEquals(edgeIds.length, map.size());
+		for (int id : edgeIds) {
+			assertEquals(vehicle(id), map.get(id));
+		}
+		assertNull(map.get(2));
+		assertNull(map.get(-2));
+		assertEquals(Arrays.stream(edgeIds).boxed().collect(Collectors.toList()), idsOf(map));
+	}
+
+	/**
+	 * Tries to add and remove ids sharing trie paths, should keep the other ids reachable and prune emptied nodes
+	 */
+	@Test
+	public void expectCollidingIdsRemovedIndependently() {
+		PersistentVehicleMap map = mapOf(collidingIds);
+		assertEquals(collidingIds.length, map.size());
+		for (int id : collidingIds) {
+			assertEquals(vehicle(id), map.get(id));
+		}
+
+		map = map.without(1 << 5).without(0);
+		assertNull(map.get(1 << 5));
+		assertNull(map.get(0));
+		assertEquals(Arrays.asList(1, 1 << 10, 1 << 15, 1 << 20, 1 << 25, 1 << 30), idsOf(map));
+
+		for (int id : collidingIds) {
+			map = map.without(id);
+		}
+		assertEquals(0, map.size());
+		assertEquals(0, map.stream(false).count());
+		assertNull(map.get(1));
+	}
+
+	/**
+	 * Tries to replace a vehicle and to remove a missing id, should keep the size and return the same map
+	 */
+	@Test
+	public void expectReplaceAndMissingRemove() {
+		PersistentVehicleMap map = mapOf(-1, 0, 1);
+		Vehicle replacement = new Vehicle(0, 2014, "Tesla", "S");
+		PersistentVehicleMap replaced = map.with(replacement);
+		assertEquals(3, replaced.size());
+		assertEquals(replacement, replaced.get(0));
+
+		assertSame(map, map.without(2));
+		assertSame(map, map.without(Integer.MIN_VALUE));
+	}
+
+	/**
+	 * Tries writes on a map taken as a snapshot, should leave the snapshot unchanged
+	 */
+	@Test
+	public void expectSnapshotUnchangedByWrites() {
+		PersistentVehicleMap snapshot = mapOf(edgeIds);
+		PersistentVehicleMap written = snapshot
+				.with(new Vehicle(0, 2014, "Tesla", "S"))
+				.with(vehicle(2))
+				.without(-1)
+				.without(Integer.MAX_VALUE);
+
+		assertEquals(edgeIds.length, snapshot.size());
+		assertEquals(vehicle(0), snapshot.get(0));
+		assertNull(snapshot.get(2));
+		assertEquals(vehicle(-1), snapshot.get(-1));
+		assertEquals(Arrays.stream(edgeIds).boxed().collect(Collectors.toList()), idsOf(snapshot));
+
+		assertEquals(edgeIds.length - 1, written.size());
+		assertEquals(new Vehicle(0, 2014, "Tesla", "S"), written.get(0));
+		assertNull(written.get(-1));
+	}
+
+	/**
+	 * Tries to split the spliterator of a map spanning negative and positive ids down to single trie nodes, should
+	 * report the map size and characteristics, keep the estimates summing to the size and visit every id once in
+	 * ascending order across the parts
+	 */
+	@Test
+	public void expectSpliteratorSplitsInIdOrder() {
+		PersistentVehicleMap map = PersistentVehicleMap.empty();
+		List<Integer> expectedIds = new ArrayList<>();
+		for (int id = -5000; id < 5000; id += 3) {
+			map = map.with(vehicle(id));
+			expectedIds.add(id);
+		}
+		Spliterator<Vehicle> spliterator = map.spliterator();
+		assertEquals(map.size(), spliterator.estimateSize());
+		int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+		assertEquals(characteristics, spliterator.characteristics());
+
+		List<Spliterator<Vehicle>> parts = new ArrayList<>();
+		splitFully(spliterator, parts);
+		assertTrue(parts.size() >= 32);
+		long estimatedSize = 0;
+		List<Integer> ids = new ArrayList<>();
+		for (Spliterator<Vehicle> part : parts) {
+			assertEquals(characteristics, part.characteristics());
+			estimatedSize += part.estimateSize();
+			part.forEachRemaining(vehicle -> ids.add(vehicle.getId()));
+		}
+		assertEquals(map.size(), estimatedSize);
+		assertEquals(expectedIds, ids);
+	}
+
+	/**
+	 * Tries to advance the spliterator by one vehicle before splitting, should refuse to split and then visit the rest
+	 */
+	@Test
+	public void expectAdvancedSpliteratorNotSplit() {
+		Spliterator<Vehicle> spliterator = mapOf(collidingIds).spliterator();
+		List<Integer> ids = new ArrayList<>();
+		assertTrue(spliterator.tryAdvance(vehicle -> ids.add(vehicle.getId())));
+		assertNull(spliterator.trySplit());
+		spliterator.forEachRemaining(vehicle -> ids.add(vehicle.getId()));
+		assertEquals(Arrays.stream(collidingIds).boxed().collect(Collectors.toList()), ids);
+		assertNull(PersistentVehicleMap.empty().spliterator().trySplit());
+	}
+}
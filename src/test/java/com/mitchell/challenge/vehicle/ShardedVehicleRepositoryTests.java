@@ -0,0 +1,135 @@
+package com.mitchell.challenge.vehicle;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the sharded repository, including routing, scatter-gather queries and rebalancing between shards
+ */
+public class ShardedVehicleRepositoryTests {
+
+	// Number of vehicles inserted before each test
+	private static final int vehicleCount = 1000;
+
+	// JDBC url of the shard databases, completed with the shard name
+	private static final String shardUrlPrefix = "jdbc:h2:mem:sharded-test-";
+
+	// The repository being tested, backed by three shard databases
+	private ShardedVehicleRepository repository;
+
+	/**
+	 * Creates a repository with three shards and inserts the test vehicles
+	 *
+	 * @throws IOException if the tracer cannot be created
+	 */
+	@BeforeEach
+	public void setUp() throws IOException {
+		repository = new ShardedVehicleRepository(3, 128, 2, shardUrlPrefix, "jdbc:h2:mem:testdb;QUERY_CACHE_SIZE=64",
+				"sa", "password", new VehicleTracer(0, "log", "traces.jsonl"));
+		for (int id = 0; id < vehicleCount; id++) {
+			repository.createVehicle(new Vehicle(id, 2000 + id % 10, id % 2 == 0 ? "Toyota" : "Tesla", "M" + id % 7));
+		}
+	}
+
+	/**
+	 * Closes the shard databases so the next test starts empty
+	 */
+	@AfterEach
+	public void tearDown() {
+		repository.close();
+	}
+
+	/**
+	 * Tries to spread vehicles over the shards, every shard should hold some and every vehicle should be found by id
+	 */
+	@Test
+	public void expectVehiclesSpreadAcrossShards() {
+		Map<String, Integer> sizes = repository.shardSizes();
+		assertEquals(3, sizes.size());
+		assertEquals(vehicleCount, sizes.values().stream().mapToInt(Integer::intValue).sum());
+		sizes.values().forEach(size -> assertTrue(size > vehicleCount / 6));
+
+		assertEquals(new Vehicle(42, 2002, "Toyota", "M0"), repository.getVehicleById(42));
+		assertTrue(repository.isIdTaken(999));
+		assertFalse(repository.isIdTaken(vehicleCount));
+	}
+
+	/**
+	 * Tries filter queries across shards, results should be merged from every shard in id order
+	 */
+	@Test
+	public void expectScatterGatherInIdOrder() {
+		List<Vehicle> vehicles = repository.getVehiclesByYear(2003);
+		assertEquals(vehicleCount / 10, vehicles.size());
+		for (int i = 1; i < vehicles.size(); i++) {
+			assertTrue(vehicles.get(i - 1).getId() < vehicles.get(i).getId());
+		}
+		assertEquals(vehicleCount, repository.getAllVehicles().size());
+		assertNull(repository.deleteVehiclesMatchingAll(null, "Tesla", null, vehicleCount / 2 - 1));
+		assertEquals(vehicleCount / 2, repository.deleteVehiclesMatchingAll(null, "Tesla", null, vehicleCount).size());
+		assertEquals(vehicleCount / 2, repository.getAllVehicles().size());
+		assertEquals(3, repository.getVehiclesByIds(Arrays.asList(0, 2, 4, 5)).size());
+	}
+
+	/**
+	 * Tries adding then removing a shard, only a share of vehicles should move and none should be lost
+	 */
+	@Test
+	public void expectRebalancingKeepsEveryVehicle() {
+		Map<String, Integer> before = repository.shardSizes();
+		String added = repository.addShard();
+		Map<String, Integer> after = repository.shardSizes();
+
+		int moved = after.get(added);
+		assertTrue(moved > 0 && moved < vehicleCount / 2);
+		before.forEach((name, size) -> assertTrue(after.get(name) <= size));
+		assertEquals(vehicleCount, repository.getAllVehicles().size());
+		for (int id = 0; id < vehicleCount; id++) {
+			assertEquals(id, (int) repository.getVehicleById(id).getId());
+		}
+
+		repository.removeShard("shard-0");
+		assertEquals(3, repository.shardSizes().size());
+		assertEquals(vehicleCount, repository.getAllVehicles().size());
+		for (int id = 0; id < vehicleCount; id++) {
+			assertEquals(id, (int) repository.getVehicleById(id).getId());
+		}
+	}
+
+	/**
+	 * Tries adding a shard whose inserts fail, should leave every vehicle on its old shard and keep routing to it
+	 *
+	 * @throws SQLException if the database of the next shard cannot be prepared
+	 */
+	@Test
+	public void expectFailedRebalancingKeepsShards() throws SQLException {
+		Map<String, Integer> before = repository.shardSizes();
+		// Create the next shard database first with a model column too short for the vehicles moved to it
+		try (Connection connection = DriverManager.getConnection(shardUrlPrefix + "shard-3", "sa", "password");
+			 Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE vehicle (id INTEGER NOT NULL, make VARCHAR(255) NOT NULL, " +
+					"model VARCHAR(1) NOT NULL, year INTEGER NOT NULL, PRIMARY KEY (id))");
+			assertThrows(RuntimeException.class, () -> repository.addShard());
+		}
+
+		assertEquals(before, repository.shardSizes());
+		for (int id = 0; id < vehicleCount; id++) {
+			assertEquals(id, (int) repository.getVehicleById(id).getId());
+		}
+		String added = repository.addShard();
+		assertEquals("shard-4", added);
+		assertEquals(vehicleCount, repository.getAllVehicles().size());
+	}
+}
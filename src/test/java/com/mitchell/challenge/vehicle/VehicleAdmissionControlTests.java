@@ -0,0 +1,171 @@
+package com.mitchell.challenge.vehicle;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the admission control, including the per-client token buckets and the per-endpoint concurrency caps
+ */
+public class VehicleAdmissionControlTests {
+
+	// The address of the proxy trusted to send the client id header
+	private static final String proxyAddress = "10.0.0.1";
+
+	// The registry the rejection counters are read from
+	private SimpleMeterRegistry meterRegistry;
+
+	// The admission control being tested, with a burst of 2 and caps of 1 scan, 4 point and 1 write requests
+	private VehicleAdmissionControl admissionControl;
+
+	/**
+	 * Creates the admission control with a refill rate too slow to matter during a test
+	 */
+	@BeforeEach
+	public void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		admissionControl = new VehicleAdmissionControl(0.001, 2, 100, proxyAddress, 1, 4, 1, meterRegistry);
+	}
+
+	/**
+	 * Tries to exceed the burst of a client, should reject it with 429 while other clients are still admitted
+	 */
+	@Test
+	public void expectRateLimitPerClient() {
+		admit(request("GET", "/vehicles/1", "client-a"));
+		admit(request("GET", "/vehicles/2", "client-a"));
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
+				admissionControl.preHandle(request("GET", "/vehicles/3", "client-a"), response, null));
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getStatus());
+		assertNotNull(response.getHeader("Retry-After"));
+
+		admit(request("GET", "/vehicles/3", "client-b"));
+		assertEquals(1.0, rejected("point", "rate"));
+	}
+
+	/**
+	 * Tries to send a new client id with each request from an address that is not a trusted proxy, should ignore the
+	 * header and limit the address
+	 */
+	@Test
+	public void expectClientIdIgnoredFromUntrustedAddress() {
+		admit(request("GET", "/vehicles/1", "client-a", "192.168.0.7"));
+		admit(request("GET", "/vehicles/2", "client-b", "192.168.0.7"));
+
+		assertThrows(ResponseStatusException.class, () -> admissionControl.preHandle(
+				request("GET", "/vehicles/3", "client-c", "192.168.0.7"), new MockHttpServletResponse(), null));
+		admit(request("GET", "/vehicles/3", "client-c"));
+		assertEquals(1.0, rejected("point", "rate"));
+	}
+
+	/**
+	 * Tries more clients than the maximum kept, should drop the bucket of the least recently used client only
+	 */
+	@Test
+	public void expectLeastRecentlyUsedClientDropped() {
+		admissionControl = new VehicleAdmissionControl(0.001, 1, 2, proxyAddress, 1, 4, 1, meterRegistry);
+		admit(request("GET", "/vehicles/1", "client-a"));
+		admit(request("GET", "/vehicles/1", "client-b"));
+		assertThrows(ResponseStatusException.class, () -> admissionControl.preHandle(
+				request("GET", "/vehicles/1", "client-a"), new MockHttpServletResponse(), null));
+
+		admit(request("GET", "/vehicles/1", "client-c"));
+		assertThrows(ResponseStatusException.class, () -> admissionControl.preHandle(
+				request("GET", "/vehicles/1", "client-a"), new MockHttpServletResponse(), null));
+		admit(request("GET", "/vehicles/1", "client-b"));
+	}
+
+	/**
+	 * Tries to run more scans at once than the cap, should reject the extra scan until the running one completes,
+	 * without affecting the other endpoint classes
+	 */
+	@Test
+	public void expectConcurrencyCapPerEndpointClass() {
+		MockHttpServletRequest scan = request("GET", "/vehicles", "client-a");
+		admit(scan);
+
+		ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
+				admissionControl.preHandle(request("GET", "/vehicles/search", "client-b"),
+						new MockHttpServletResponse(), null));
+		assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getStatus());
+		admit(request("POST", "/vehicles/lookup", "client-b"));
+
+		admissionControl.afterCompletion(scan, new MockHttpServletResponse(), null, null);
+		admit(request("GET", "/vehicles/stats", "client-c"));
+		assertEquals(1.0, rejected("scan", "concurrency"));
+	}
+
+	/**
+	 * Tries to classify the vehicle routes
+	 */
+	@Test
+	public void expectEndpointClasses() {
+		assertEquals(VehicleAdmissionControl.EndpointClass.SCAN,
+				VehicleAdmissionControl.classify(request("GET", "/vehicles/", null)));
+		assertEquals(VehicleAdmissionControl.EndpointClass.POINT,
+				VehicleAdmissionControl.classify(request("GET", "/vehicles/7", null)));
+		assertEquals(VehicleAdmissionControl.EndpointClass.WRITE,
+				VehicleAdmissionControl.classify(request("PUT", "/vehicles/batch", null)));
+		assertEquals(VehicleAdmissionControl.EndpointClass.WRITE,
+				VehicleAdmissionControl.classify(request("DELETE", "/vehicles", null)));
+	}
+
+	/**
+	 * Passes the request through the admission control, failing the test if it is rejected
+	 *
+	 * @param request the request to admit
+	 */
+	private void admit(MockHttpServletRequest request) {
+		assertTrue(admissionControl.preHandle(request, new MockHttpServletResponse(), null));
+	}
+
+	/**
+	 * Builds a request to a vehicle route sent through the trusted proxy
+	 *
+	 * @param method the HTTP method
+	 * @param path the request path
+	 * @param clientId the client id header, or null to identify the client by address
+	 * @return the request
+	 */
+	private static MockHttpServletRequest request(String method, String path, String clientId) {
+		return request(method, path, clientId, proxyAddress);
+	}
+
+	/**
+	 * Builds a request to a vehicle route
+	 *
+	 * @param method the HTTP method
+	 * @param path the request path
+	 * @param clientId the client id header, or null to send none
+	 * @param remoteAddress the address the request comes from
+	 * @return the request
+	 */
+	private static MockHttpServletRequest request(String method, String path, String clientId, String remoteAddress) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+		request.setRemoteAddr(remoteAddress);
+		if (clientId != null) {
+			request.addHeader(VehicleAdmissionControl.clientIdHeader, clientId);
+		}
+		return request;
+	}
+
+	/**
+	 * Reads a rejection counter
+	 *
+	 * @param endpoint the endpoint class tag
+	 * @param reason the reason tag
+	 * @return the number of rejections counted
+	 */
+	private double rejected(String endpoint, String reason) {
+		return meterRegistry.get("vehicle.admission.rejected").tag("endpoint", endpoint).tag("reason", reason)
+				.counter().count();
+	}
+}
@@ -12,6 +12,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.hamcrest.Matchers.containsString;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
@@ -403,4 +406,316 @@ public class VehicleApplicationTests {
 						objectMapper.writeValueAsString(vehicle_3) + "]")));
 	}
 
+	/**
+	 * Tries to search vehicles by the prefix of their make, should return the matching vehicles in id order
+	 *
+	 * @throws Exception If the search request fails, or the matching vehicles differ from the expected
+	 */
+	@Test
+	@Order(18)
+	public void expectSearchVehiclesByPrefix() throws Exception {
+		Vehicle vehicle_1 = new Vehicle(1, 2012, "Toyota", "S");
+		Vehicle vehicle_2 = new Vehicle(2, 2012, "Tesla", "S");
+		Vehicle vehicle_3 = new Vehicle(3, 2015, "Toyota", "S");
+
+		// Search vehicles whose make starts with toy, should return both Toyota vehicles
+		mockMvc.perform(get("/vehicles/search?q=toy"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[" +
+						objectMapper.writeValueAsString(vehicle_1) + "," +
+						objectMapper.writeValueAsString(vehicle_3) + "]"));
+
+		// Search vehicles whose make starts with Tes, should return the Tesla vehicle only
+		mockMvc.perform(get("/vehicles/search?q=Tes"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[" + objectMapper.writeValueAsString(vehicle_2) + "]"));
+	}
+
+	/**
+	 * Tries to search vehicles with a misspelled make, should fall back to approximate matches
+	 *
+	 * @throws Exception If the search request fails, or the matching vehicles differ from the expected
+	 */
+	@Test
+	@Order(19)
+	public void expectSearchVehiclesFuzzy() throws Exception {
+		Vehicle vehicle_1 = new Vehicle(1, 2012, "Toyota", "S");
+		Vehicle vehicle_3 = new Vehicle(3, 2015, "Toyota", "S");
+
+		mockMvc.perform(get("/vehicles/search?q=toyta"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[" +
+						objectMapper.writeValueAsString(vehicle_1) + "," +
+						objectMapper.writeValueAsString(vehicle_3) + "]"));
+	}
+
+	/**
+	 * Tries to search vehicles with a blank query, should return bad request
+	 *
+	 * @throws Exception If the actual error type is not expected, or search request fails
+	 */
+	@Test
+	@Order(20)
+	public void expectSearchVehiclesEmptyQuery() throws Exception {
+		mockMvc.perform(get("/vehicles/search").param("q", " "))
+				.andExpect(status().isBadRequest())
+				.andExpect(status().reason("Search query must not be empty"));
+	}
+
+	/**
+	 * Tries to get vehicle counts grouped by make and by year and make, should return the counts of each group
+	 *
+	 * @throws Exception If the stats request fails, or the counts differ from the expected
+	 */
+	@Test
+	@Order(21)
+	public void expectVehicleStatsGrouped() throws Exception {
+		mockMvc.perform(get("/vehicles/stats?groupBy=make"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("\"total\":3")))
+				.andExpect(content().string(containsString("\"groups\":[" +
+						"{\"make\":\"Tesla\",\"count\":1},{\"make\":\"Toyota\",\"count\":2}]")));
+
+		mockMvc.perform(get("/vehicles/stats?groupBy=year,make"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("\"groups\":[" +
+						"{\"year\":2012,\"make\":\"Tesla\",\"count\":1}," +
+						"{\"year\":2012,\"make\":\"Toyota\",\"count\":1}," +
+						"{\"year\":2015,\"make\":\"Toyota\",\"count\":1}]")));
+	}
+
+	/**
+	 * Tries to get vehicle counts grouped by an unknown field, should return bad request
+	 *
+	 * @throws Exception If the actual error type is not expected, or stats request fails
+	 */
+	@Test
+	@Order(22)
+	public void expectVehicleStatsInvalidGroup() throws Exception {
+		mockMvc.perform(get("/vehicles/stats?groupBy=color"))
+				.andExpect(status().isBadRequest())
+				.andExpect(status().reason("Stats can only be grouped by year, make and model"));
+	}
+
+	/**
+	 * Tries to update several vehicles in one batch, should skip unknown ids and apply the rest
+	 *
+	 * @throws Exception If the batch update fails, or the vehicles are not updated as expected
+	 */
+	@Test
+	@Order(23)
+	public void expectBatchUpdateVehicles() throws Exception {
+		List<Vehicle> updatedVehicles = Arrays.asList(
+				new Vehicle(1, null, null, "Corolla"),
+				new Vehicle(3, 2016, null, null),
+				new Vehicle(9, null, "Honda", null));
+		mockMvc.perform(
+				put("/vehicles/batch")
+						.content(objectMapper.writeValueAsString(updatedVehicles))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(content().string("{\"affected\":2}"));
+
+		mockMvc.perform(get("/vehicles/1"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(objectMapper.writeValueAsString(new Vehicle(1, 2012, "Toyota", "Corolla"))));
+		mockMvc.perform(get("/vehicles/3"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(objectMapper.writeValueAsString(new Vehicle(3, 2016, "Toyota", "S"))));
+	}
+
+	/**
+	 * Tries to bulk delete vehicles without any filter, should return bad request
+	 *
+	 * @throws Exception If the actual error type is not expected, or delete request fails
+	 */
+	@Test
+	@Order(24)
+	public void expectBulkDeleteWithoutFilter() throws Exception {
+		mockMvc.perform(delete("/vehicles"))
+				.andExpect(status().isBadRequest())
+				.andExpect(status().reason("Bulk delete requires at least one of year, make or model"));
+	}
+
+	/**
+	 * Tries to bulk delete vehicles matching both a year and a make, should only delete vehicles matching both
+	 *
+	 * @throws Exception If the bulk delete fails, or the remaining vehicles differ from the expected
+	 */
+	@Test
+	@Order(25)
+	public void expectBulkDeleteByFilter() throws Exception {
+		Vehicle vehicle_1 = new Vehicle(1, 2012, "Toyota", "Corolla");
+		Vehicle vehicle_2 = new Vehicle(2, 2012, "Tesla", "S");
+
+		mockMvc.perform(delete("/vehicles?year=2016&make=Toyota"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("{\"affected\":1}"));
+
+		mockMvc.perform(get("/vehicles"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[" +
+						objectMapper.writeValueAsString(vehicle_1) + "," +
+						objectMapper.writeValueAsString(vehicle_2) + "]"));
+	}
+
+	/**
+	 * Tries to get vehicles sorted by make and by descending id, should return them in the requested order
+	 *
+	 * @throws Exception If the get requests fail, or the order differs from the expected
+	 */
+	@Test
+	@Order(26)
+	public void expectGetVehiclesSorted() throws Exception {
+		Vehicle vehicle_1 = new Vehicle(1, 2012, "Toyota", "Corolla");
+		Vehicle vehicle_2 = new Vehicle(2, 2012, "Tesla", "S");
+
+		mockMvc.perform(get("/vehicles?sort=make"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[" +
+						objectMapper.writeValueAsString(vehicle_2) + "," +
+						objectMapper.writeValueAsString(vehicle_1) + "]"));
+
+		mockMvc.perform(get("/vehicles?year=2012&sort=id&order=desc"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[" +
+						objectMapper.writeValueAsString(vehicle_2) + "," +
+						objectMapper.writeValueAsString(vehicle_1) + "]"));
+	}
+
+	/**
+	 * Tries to get vehicles sorted by an unknown field, should return bad request
+	 *
+	 * @throws Exception If the actual error type is not expected, or get request fails
+	 */
+	@Test
+	@Order(27)
+	public void expectGetVehiclesInvalidSort() throws Exception {
+		mockMvc.perform(get("/vehicles?sort=color"))
+				.andExpect(status().isBadRequest())
+				.andExpect(status().reason("Vehicles can only be sorted by id, year, make and model"));
+	}
+
+	/**
+	 * Tries to get only some fields of the vehicles, should return only those fields in filter order
+	 *
+	 * @throws Exception If the get requests fail, or the fields differ from the expected
+	 */
+	@Test
+	@Order(28)
+	public void expectGetVehicleFields() throws Exception {
+		mockMvc.perform(get("/vehicles?fields=id,model"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[{\"id\":1,\"model\":\"Corolla\"},{\"id\":2,\"model\":\"S\"}]"));
+
+		// Vehicles matching the make come before vehicles matching only the model
+		mockMvc.perform(get("/vehicles?make=Tesla&model=Corolla&fields=id"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[{\"id\":2},{\"id\":1}]"));
+
+		mockMvc.perform(get("/vehicles/2?fields=model"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("{\"model\":\"S\"}"));
+	}
+
+	/**
+	 * Tries to get an unknown field of the vehicles, should return bad request
+	 *
+	 * @throws Exception If the actual error type is not expected, or get request fails
+	 */
+	@Test
+	@Order(29)
+	public void expectGetVehicleFieldsInvalid() throws Exception {
+		mockMvc.perform(get("/vehicles?fields=id,color"))
+				.andExpect(status().isBadRequest())
+				.andExpect(status().reason("Fields must be a comma separated list of id, year, make and model"));
+	}
+
+	/**
+	 * Tries to get several vehicles by id at once, should return the vehicles found and the ids not found
+	 *
+	 * @throws Exception If the lookup request fails, or the result differs from the expected
+	 */
+	@Test
+	@Order(30)
+	public void expectLookupVehicles() throws Exception {
+		Vehicle vehicle_1 = new Vehicle(1, 2012, "Toyota", "Corolla");
+		Vehicle vehicle_2 = new Vehicle(2, 2012, "Tesla", "S");
+
+		mockMvc.perform(
+				post("/vehicles/lookup")
+						.content(objectMapper.writeValueAsString(Arrays.asList(2, 7, 1, 2)))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("\"found\":[" +
+						objectMapper.writeValueAsString(vehicle_2) + "," +
+						objectMapper.writeValueAsString(vehicle_1) + "]")))
+				.andExpect(content().string(containsString("\"notFound\":[7]")));
+	}
+
+	/**
+	 * Tries to export a snapshot, delete a vehicle and restore the snapshot, should bring the deleted vehicle back
+	 *
+	 * @throws Exception If the snapshot requests fail, or the restored vehicles differ from the expected
+	 */
+	@Test
+	@Order(31)
+	public void expectSnapshotRestored() throws Exception {
+		Vehicle vehicle_1 = new Vehicle(1, 2012, "Toyota", "Corolla");
+		Vehicle vehicle_2 = new Vehicle(2, 2012, "Tesla", "S");
+
+		mockMvc.perform(post("/admin/snapshots/test-snapshot"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("\"vehicles\":2")));
+		mockMvc.perform(delete("/vehicles/2"))
+				.andExpect(status().isOk());
+		mockMvc.perform(post("/admin/snapshots/test-snapshot/restore"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("\"vehicles\":2")));
+		mockMvc.perform(get("/vehicles"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(objectMapper.writeValueAsString(Arrays.asList(vehicle_1, vehicle_2))));
+		mockMvc.perform(get("/vehicles/search").param("q", "Tesla"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString(objectMapper.writeValueAsString(vehicle_2))));
+	}
+
+	/**
+	 * Tries to restore a missing snapshot and a snapshot name outside the snapshot directory, expects 404 and 400
+	 *
+	 * @throws Exception If the snapshot requests fail to perform, or the statuses differ from the expected
+	 */
+	@Test
+	@Order(32)
+	public void expectSnapshotErrors() throws Exception {
+		mockMvc.perform(post("/admin/snapshots/missing-snapshot/restore"))
+				.andExpect(status().isNotFound());
+		mockMvc.perform(post("/admin/snapshots/.hidden/restore"))
+				.andExpect(status().isBadRequest());
+	}
+
+	/**
+	 * Tries to update a batch containing a null vehicle, should return bad request and update nothing
+	 *
+	 * @throws Exception If the actual error type is not expected, or the vehicle is updated anyway
+	 */
+	@Test
+	@Order(33)
+	public void expectBatchUpdateNullVehicle() throws Exception {
+		mockMvc.perform(
+				put("/vehicles/batch")
+						.content("[{\"id\":1,\"model\":\"Camry\"},null]")
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isBadRequest())
+				.andExpect(status().reason("Bulk update list must not contain null vehicles"));
+
+		mockMvc.perform(get("/vehicles/1"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(
+						objectMapper.writeValueAsString(new Vehicle(1, 2012, "Toyota", "Corolla"))));
+	}
+
 }
@@ -0,0 +1,352 @@
+package com.mitchell.challenge.vehicle;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test of the REST API against the embedded server, reporting throughput and latency percentiles per endpoint
+ * and failing when a latency or error rate objective is missed.
+ *
+ * Excluded from the regular test task, run with "./gradlew loadTest". The workload and objectives are set with the
+ * load.* system properties:
+ *  - load.threads, load.vehicles, load.warmupMillis and load.durationMillis size the run
+ *  - load.mix weighs the endpoints, as comma separated endpoint:weight pairs
+ *  - load.filterMix weighs the filters of filtered listings, as year, make and model weights
+ *  - load.slo.p50Millis, load.slo.p99Millis and load.slo.maxErrorRate are the objectives of every endpoint, and
+ *  load.slo.endpoint.p50Millis or load.slo.endpoint.p99Millis override them for one endpoint
+ *
+ * The application runs with the deployed settings of src/main/resources/application.properties, which take
+ * precedence over the test application.properties shadowing it on the test classpath. Only the database name is
+ * overridden, so the run does not share an in-memory database with other tests.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = "spring.datasource.url=jdbc:h2:mem:loadtest")
+@TestPropertySource(locations = "file:src/main/resources/application.properties")
+public class VehicleLoadTest {
+
+	// Client threads sending requests concurrently
+	private final int threads = Integer.getInteger("load.threads", 16);
+
+	// Number of vehicles seeded before the run
+	private final int vehicleCount = Integer.getInteger("load.vehicles", 10000);
+
+	// Duration of the warmup, whose requests are not measured
+	private final long warmupMillis = Long.getLong("load.warmupMillis", 2000);
+
+	// Duration of the measurement
+	private final long durationMillis = Long.getLong("load.durationMillis", 10000);
+
+	// Weight of each endpoint in the workload
+	private final String mix = System.getProperty("load.mix",
+			"getById:45,filter:20,list:1,search:10,stats:4,lookup:5,create:6,update:4,batch:1,deleteById:3," +
+					"deleteByFilter:1");
+
+	// Weights of the year, make and model filters of filtered listings
+	private final String filterMix = System.getProperty("load.filterMix", "year:40,make:40,model:20");
+
+	// Latency objectives of every endpoint, in milliseconds
+	private final long p50Millis = Long.getLong("load.slo.p50Millis", 50);
+	private final long p99Millis = Long.getLong("load.slo.p99Millis", 500);
+
+	// Share of failed requests allowed for every endpoint
+	private final double maxErrorRate = Double.parseDouble(System.getProperty("load.slo.maxErrorRate", "0.001"));
+
+	// Makes the seeded vehicles are spread across
+	private final String[] makes = {"Toyota", "Tesla", "Honda", "Ford", "BMW", "Audi", "Kia", "Mazda"};
+
+	// Client of the embedded server on its random port
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	// Service used to seed the vehicles without going through HTTP
+	@Autowired
+	private VehicleService vehicleService;
+
+	// The next id of the vehicles created during the run, above the seeded ids
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	// The ids of vehicles created during the run and not deleted yet
+	private final ConcurrentLinkedQueue<Integer> createdIds = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Seeds the vehicles, runs the warmup and the measured workload, prints the report and checks the objectives
+	 *
+	 * @throws Exception if a client thread fails
+	 */
+	@Test
+	public void loadTestEndpoints() throws Exception {
+		for (int id = 0; id < vehicleCount; id++) {
+			vehicleService.createVehicle(new Vehicle(id, 1950 + id % 100, makes[id % makes.length], "Model " + id % 500));
+		}
+		nextId.set(vehicleCount);
+
+		List<String> endpoints = new ArrayList<>();
+		int[] cumulativeWeights = parseWeights(mix, endpoints);
+		List<String> filters = new ArrayList<>();
+		int[] cumulativeFilterWeights = parseWeights(filterMix, filters);
+
+		run(warmupMillis, endpoints, cumulativeWeights, filters, cumulativeFilterWeights);
+		Map<String, Samples> results = run(durationMillis, endpoints, cumulativeWeights, filters,
+				cumulativeFilterWeights);
+
+		List<String> violations = new ArrayList<>();
+		System.out.printf("%-16s %9s %8s %10s %9s %9s %9s %9s%n",
+				"endpoint", "requests", "errors", "req/sec", "p50 ms", "p90 ms", "p99 ms", "max ms");
+		for (String endpoint : endpoints) {
+			Samples samples = results.get(endpoint);
+			if (samples == null || samples.size == 0) {
+				continue;
+			}
+			samples.sort();
+			double p50 = samples.percentileMillis(50);
+			double p99 = samples.percentileMillis(99);
+			double errorRate = (double) samples.errors / samples.size;
+			System.out.printf("%-16s %9d %8d %10.0f %9.2f %9.2f %9.2f %9.2f%n", endpoint, samples.size,
+					samples.errors, samples.size * 1000.0 / durationMillis, p50, samples.percentileMillis(90), p99,
+					samples.percentileMillis(100));
+
+			long endpointP50 = Long.getLong("load.slo." + endpoint + ".p50Millis", p50Millis);
+			long endpointP99 = Long.getLong("load.slo." + endpoint + ".p99Millis", p99Millis);
+			if (p50 > endpointP50) {
+				violations.add(String.format("%s p50 %.2f ms > %d ms", endpoint, p50, endpointP50));
+			}
+			if (p99 > endpointP99) {
+				violations.add(String.format("%s p99 %.2f ms > %d ms", endpoint, p99, endpointP99));
+			}
+			if (errorRate > maxErrorRate) {
+				violations.add(String.format("%s error rate %.4f > %.4f", endpoint, errorRate, maxErrorRate));
+			}
+		}
+		assertTrue(violations.isEmpty(), "Objectives missed: " + violations);
+	}
+
+	/**
+	 * Sends the workload from every client thread until the duration elapses
+	 *
+	 * @param millis the duration of the run
+	 * @param endpoints the endpoints of the workload
+	 * @param cumulativeWeights the cumulative weights of the endpoints
+	 * @param filters the filters of filtered listings
+	 * @param cumulativeFilterWeights the cumulative weights of the filters
+	 * @return the latency samples of each endpoint, merged across threads
+	 * @throws Exception if a client thread fails
+	 */
+	private Map<String, Samples> run(long millis, List<String> endpoints, int[] cumulativeWeights,
+									 List<String> filters, int[] cumulativeFilterWeights) throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Map<String, Samples>>> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			workers.add(executor.submit(() -> {
+				Map<String, Samples> samples = new HashMap<>();
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (System.nanoTime() < deadline) {
+					String endpoint = endpoints.get(pick(cumulativeWeights, random));
+					String filter = filters.get(pick(cumulativeFilterWeights, random));
+					long start = System.nanoTime();
+					boolean ok = send(endpoint, filter, random);
+					samples.computeIfAbsent(endpoint, key -> new Samples()).add(System.nanoTime() - start, ok);
+				}
+				return samples;
+			}));
+		}
+
+		Map<String, Samples> merged = new HashMap<>();
+		for (Future<Map<String, Samples>> worker : workers) {
+			worker.get().forEach((endpoint, samples) ->
+					merged.computeIfAbsent(endpoint, key -> new Samples()).addAll(samples));
+		}
+		executor.shutdown();
+		return merged;
+	}
+
+	/**
+	 * Sends one request to the endpoint
+	 *
+	 * @param endpoint the endpoint to call
+	 * @param filter the filter used if the endpoint is a filtered listing
+	 * @param random the random source of the calling thread
+	 * @return whether the response status is the one expected
+	 */
+	private boolean send(String endpoint, String filter, ThreadLocalRandom random) {
+		int id = random.nextInt(vehicleCount);
+		String make = makes[random.nextInt(makes.length)];
+		ResponseEntity<String> response;
+		switch (endpoint) {
+			case "getById":
+				response = restTemplate.getForEntity("/vehicles/" + id, String.class);
+				break;
+			case "filter":
+				String value = filter.equals("year") ? String.valueOf(1950 + random.nextInt(100)) :
+						filter.equals("make") ? make : "Model " + random.nextInt(500);
+				response = restTemplate.getForEntity("/vehicles?" + filter + "={value}", String.class, value);
+				break;
+			case "list":
+				response = restTemplate.getForEntity("/vehicles", String.class);
+				break;
+			case "search":
+				response = restTemplate.getForEntity("/vehicles/search?q={q}", String.class,
+						make.substring(0, 1 + random.nextInt(make.length() - 1)));
+				break;
+			case "stats":
+				response = restTemplate.getForEntity("/vehicles/stats?groupBy=make", String.class);
+				break;
+			case "lookup":
+				List<Integer> ids = new ArrayList<>();
+				for (int i = 0; i < 20; i++) {
+					ids.add(random.nextInt(vehicleCount));
+				}
+				response = restTemplate.postForEntity("/vehicles/lookup", ids, String.class);
+				break;
+			case "create":
+				int newId = nextId.getAndIncrement();
+				response = restTemplate.postForEntity("/vehicles",
+						new Vehicle(newId, 2020, make, "Load " + newId), String.class);
+				if (response.getStatusCode().is2xxSuccessful()) {
+					createdIds.add(newId);
+				}
+				break;
+			case "update":
+				response = restTemplate.exchange("/vehicles", HttpMethod.PUT,
+						new HttpEntity<>(new Vehicle(id, 1950 + random.nextInt(100), null, null)), String.class);
+				break;
+			case "batch":
+				List<Vehicle> vehicles = new ArrayList<>();
+				for (int i = 0; i < 20; i++) {
+					vehicles.add(new Vehicle(random.nextInt(vehicleCount), 1950 + random.nextInt(100), null, null));
+				}
+				response = restTemplate.exchange("/vehicles/batch", HttpMethod.PUT, new HttpEntity<>(vehicles),
+						String.class);
+				break;
+			case "deleteById":
+				Integer deleteId = createdIds.poll();
+				if (deleteId == null) {
+					return true;
+				}
+				response = restTemplate.exchange("/vehicles/" + deleteId, HttpMethod.DELETE, null, String.class);
+				break;
+			case "deleteByFilter":
+				Integer deleteModelId = createdIds.poll();
+				if (deleteModelId == null) {
+					return true;
+				}
+				response = restTemplate.exchange("/vehicles?model={model}", HttpMethod.DELETE, null, String.class,
+						"Load " + deleteModelId);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown endpoint " + endpoint);
+		}
+		return response.getStatusCode().is2xxSuccessful();
+	}
+
+	/**
+	 * Parses comma separated name:weight pairs
+	 *
+	 * @param weights the pairs to parse
+	 * @param names the list the names are added to, in order
+	 * @return the cumulative weights, in the order of the names
+	 */
+	private static int[] parseWeights(String weights, List<String> names) {
+		String[] pairs = weights.split(",");
+		int[] cumulative = new int[pairs.length];
+		int total = 0;
+		for (int i = 0; i < pairs.length; i++) {
+			String[] pair = pairs[i].trim().split(":");
+			names.add(pair[0].trim());
+			total += Integer.parseInt(pair[1].trim());
+			cumulative[i] = total;
+		}
+		return cumulative;
+	}
+
+	/**
+	 * Picks an index at random in proportion to the weights
+	 *
+	 * @param cumulativeWeights the cumulative weights
+	 * @param random the random source of the calling thread
+	 * @return the index picked
+	 */
+	private static int pick(int[] cumulativeWeights, ThreadLocalRandom random) {
+		int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		int index = 0;
+		while (roll >= cumulativeWeights[index]) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Latency samples of one endpoint, recorded by a single thread and merged after the run
+	 */
+	private static final class Samples {
+
+		// Latencies in nanoseconds, the first size entries are used
+		private long[] latencies = new long[1024];
+
+		// Number of samples recorded
+		private int size;
+
+		// Number of requests which failed
+		private int errors;
+
+		/**
+		 * Records a request
+		 *
+		 * @param nanos the latency of the request
+		 * @param ok whether the request succeeded
+		 */
+		void add(long nanos, boolean ok) {
+			if (size == latencies.length) {
+				latencies = Arrays.copyOf(latencies, size * 2);
+			}
+			latencies[size++] = nanos;
+			if (!ok) {
+				errors++;
+			}
+		}
+
+		/**
+		 * Records every sample of another thread
+		 *
+		 * @param other the samples to add
+		 */
+		void addAll(Samples other) {
+			latencies = Arrays.copyOf(latencies, Math.max(latencies.length, size + other.size));
+			System.arraycopy(other.latencies, 0, latencies, size, other.size);
+			size += other.size;
+			errors += other.errors;
+		}
+
+		/**
+		 * Sorts the samples, required before reading percentiles
+		 */
+		void sort() {
+			Arrays.sort(latencies, 0, size);
+		}
+
+		/**
+		 * Gets a percentile of the sorted samples by the nearest rank method
+		 *
+		 * @param percentile the percentile, from 0 to 100
+		 * @return the latency at the percentile in milliseconds
+		 */
+		double percentileMillis(double percentile) {
+			int rank = (int) Math.ceil(percentile / 100 * size);
+			return latencies[Math.max(rank, 1) - 1] / 1e6;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.mitchell.challenge.vehicle;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureDataJpa;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Endpoint tests of the materialized views, with views of make=Toyota and of the unfiltered list, and every requested
+ * filter suggested
+ */
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:materialized-views-app-test",
+		"vehicle.materialized.views=make=Toyota;*",
+		"vehicle.materialized.suggestions=100",
+		"vehicle.materialized.min-share=0"})
+@AutoConfigureDataJpa
+@AutoConfigureMockMvc
+@TestMethodOrder(OrderAnnotation.class)
+public class VehicleMaterializedViewsApplicationTests {
+
+	// The vehicles created by the first test, one in the make=Toyota view and both in the unfiltered view
+	private final Vehicle vehicle_1 = new Vehicle(1, 2012, "Toyota", "Corolla");
+	private final Vehicle vehicle_2 = new Vehicle(2, 2012, "Tesla", "S");
+
+	// A mock of the mvc to do pick request to the back-end being tested
+	@Autowired
+	private MockMvc mockMvc;
+
+	// Injected object used to convert object to JSON strings
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/**
+	 * Tries to create vehicles then read the filters with a view, should serve the views with the new vehicles
+	 *
+	 * @throws Exception If the requests fail to perform, or the views differ from the database
+	 */
+	@Test
+	@Order(1)
+	public void expectViewsMaintainedByWrites() throws Exception {
+		for (Vehicle vehicle : Arrays.asList(vehicle_1, vehicle_2)) {
+			mockMvc.perform(
+					post("/vehicles")
+							.content(objectMapper.writeValueAsString(vehicle))
+							.contentType(MediaType.APPLICATION_JSON)
+							.accept(MediaType.APPLICATION_JSON))
+					.andExpect(status().isOk());
+		}
+
+		mockMvc.perform(get("/vehicles?make=Toyota"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(objectMapper.writeValueAsString(Collections.singletonList(vehicle_1))));
+		mockMvc.perform(get("/vehicles"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(objectMapper.writeValueAsString(Arrays.asList(vehicle_1, vehicle_2))));
+	}
+
+	/**
+	 * Tries a filter without a materialized view, should be served like the database and suggested in the report
+	 * along with the views
+	 *
+	 * @throws Exception If the requests fail to perform, or the views or suggestions differ from the expected
+	 */
+	@Test
+	@Order(2)
+	public void expectMaterializedViewsReported() throws Exception {
+		mockMvc.perform(get("/vehicles?model=S"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(objectMapper.writeValueAsString(Collections.singletonList(vehicle_2))));
+		mockMvc.perform(get("/admin/materialized-views"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("{\"filter\":\"make=Toyota\",\"vehicles\":1,")))
+				.andExpect(content().string(containsString("{\"filter\":\"*\",\"vehicles\":2,")))
+				.andExpect(content().string(containsString("\"suggestions\":[")))
+				.andExpect(content().string(containsString("{\"filter\":\"model=S\",")));
+	}
+
+	/**
+	 * Tries projections with and without a materialized view, should project the view in memory like the database
+	 * would and count both requests towards the report
+	 *
+	 * @throws Exception If the requests fail to perform, or the rows or counts differ from the expected
+	 */
+	@Test
+	@Order(3)
+	public void expectProjectionsServedAndCounted() throws Exception {
+		mockMvc.perform(get("/vehicles?make=Toyota&fields=model,id"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[{\"model\":\"Corolla\",\"id\":1}]"));
+		mockMvc.perform(get("/vehicles?fields=id&sort=id&order=desc"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[{\"id\":2},{\"id\":1}]"));
+		mockMvc.perform(get("/vehicles?year=2012&fields=make"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[{\"make\":\"Toyota\"},{\"make\":\"Tesla\"}]"));
+		mockMvc.perform(get("/admin/materialized-views"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("{\"filter\":\"make=Toyota\",\"vehicles\":1,\"requests\":2")))
+				.andExpect(content().string(containsString("{\"filter\":\"year=2012\",\"requests\":1,")));
+	}
+}
@@ -0,0 +1,108 @@
+package com.mitchell.challenge.vehicle;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the materialized views, including their incremental maintenance and the suggested filters
+ */
+public class VehicleMaterializedViewsTests {
+
+	// The vehicles loaded into the views before each test
+	private final Vehicle vehicle_1 = new Vehicle(1, 2012, "Toyota", "Corolla");
+	private final Vehicle vehicle_2 = new Vehicle(2, 2012, "Tesla", "S");
+	private final Vehicle vehicle_3 = new Vehicle(3, 2014, "Toyota", "Camry");
+
+	// The views being tested, materializing make=Toyota and year=2014,model=S, suggesting filters of 25% of requests
+	private VehicleMaterializedViews materializedViews;
+
+	/**
+	 * Creates the views and loads the vehicles into them
+	 */
+	@BeforeEach
+	public void setUp() {
+		materializedViews = new VehicleMaterializedViews("make=Toyota; year=2014,model=S", 1000, 5, 0.25);
+		materializedViews.vehiclesLoaded(Arrays.asList(vehicle_1, vehicle_2, vehicle_3));
+	}
+
+	/**
+	 * Tries filters with and without a view, should serve the views in the order the database query would give and
+	 * leave other filters to the database
+	 */
+	@Test
+	public void expectViewsServedInFilterOrder() {
+		assertEquals(Arrays.asList(vehicle_1, vehicle_3), materializedViews.getVehicles(null, "Toyota", null));
+		assertEquals(Arrays.asList(vehicle_3, vehicle_2), materializedViews.getVehicles(2014, null, "S"));
+		assertNull(materializedViews.getVehicles(2012, null, null));
+		assertNull(materializedViews.getVehicles(null, "Toyota", "Corolla"));
+	}
+
+	/**
+	 * Tries writes moving vehicles in and out of a view, should update the view served
+	 */
+	@Test
+	public void expectViewsMaintainedByWrites() {
+		Vehicle vehicle_4 = new Vehicle(4, 2012, "Toyota", "Prius");
+		materializedViews.vehicleCreated(vehicle_4);
+		assertEquals(Arrays.asList(vehicle_1, vehicle_3, vehicle_4), materializedViews.getVehicles(null, "Toyota", null));
+
+		Vehicle updated_1 = new Vehicle(1, 2012, "Honda", "Civic");
+		materializedViews.vehicleUpdated(vehicle_1, updated_1);
+		Vehicle updated_2 = new Vehicle(2, 2012, "Toyota", "S");
+		materializedViews.vehicleUpdated(vehicle_2, updated_2);
+		assertEquals(Arrays.asList(updated_2, vehicle_3, vehicle_4), materializedViews.getVehicles(null, "Toyota", null));
+
+		materializedViews.vehicleDeleted(vehicle_3);
+		assertEquals(Arrays.asList(updated_2, vehicle_4), materializedViews.getVehicles(null, "Toyota", null));
+		assertEquals(Collections.singletonList(updated_2), materializedViews.getVehicles(2014, null, "S"));
+	}
+
+	/**
+	 * Tries a mix of requests, should suggest the filters over the share threshold that have no view, most requested
+	 * first, and report the requests served by each view
+	 */
+	@Test
+	public void expectPopularFiltersSuggested() {
+		for (int i = 0; i < 4; i++) {
+			materializedViews.getVehicles(2012, null, null);
+		}
+		for (int i = 0; i < 3; i++) {
+			materializedViews.getVehicles(null, null, null);
+			materializedViews.getVehicles(null, "Toyota", null);
+		}
+		materializedViews.getVehicles(null, "Tesla", "S");
+
+		VehicleMaterializedViews.Report report = materializedViews.report();
+		assertEquals(11, report.getRequests());
+		List<Map<String, Object>> suggestions = report.getSuggestions();
+		assertEquals(2, suggestions.size());
+		assertEquals("year=2012", suggestions.get(0).get("filter"));
+		assertEquals(4L, suggestions.get(0).get("requests"));
+		assertEquals("*", suggestions.get(1).get("filter"));
+
+		List<Map<String, Object>> views = report.getViews();
+		assertEquals(2, views.size());
+		assertEquals("make=Toyota", views.get(0).get("filter"));
+		assertEquals(2, views.get(0).get("vehicles"));
+		assertEquals(3L, views.get(0).get("requests"));
+		assertEquals("year=2014,model=S", views.get(1).get("filter"));
+	}
+
+	/**
+	 * Tries to declare views with unknown fields, repeated fields or a year that is not a number, should be refused
+	 */
+	@Test
+	public void expectInvalidViewsRefused() {
+		assertThrows(IllegalArgumentException.class, () -> new VehicleMaterializedViews("color=Red", 1000, 5, 0));
+		assertThrows(IllegalArgumentException.class, () -> new VehicleMaterializedViews("make=A,make=B", 1000, 5, 0));
+		assertThrows(IllegalArgumentException.class, () -> new VehicleMaterializedViews("year=new", 1000, 5, 0));
+		assertThrows(IllegalArgumentException.class, () -> new VehicleMaterializedViews("make=", 1000, 5, 0));
+	}
+}
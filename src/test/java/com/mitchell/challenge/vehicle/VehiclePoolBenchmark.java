@@ -0,0 +1,121 @@
+package com.mitchell.challenge.vehicle;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Concurrency benchmark of the repository against the H2 in-memory database across connection pool sizes and sizes of
+ * the H2 prepared statement cache.
+ *
+ * Excluded from the regular test task, run with "./gradlew benchmark". The number of client threads, pool sizes, cache
+ * sizes, dataset size and duration per measurement can be changed with the benchmark.* system properties.
+ */
+@Tag("benchmark")
+public class VehiclePoolBenchmark {
+
+	// Client threads issuing queries concurrently
+	private final int threads = Integer.getInteger("benchmark.threads", 32);
+
+	// Number of vehicles seeded before measuring
+	private final int vehicleCount = Integer.getInteger("benchmark.vehicles", 10000);
+
+	// Duration of the measurement for each pool size
+	private final long durationMillis = Long.getLong("benchmark.durationMillis", 3000);
+
+	// Comma separated pool sizes to measure
+	private final String poolSizes = System.getProperty("benchmark.poolSizes", "1,2,4,8,16,32");
+
+	// Comma separated QUERY_CACHE_SIZE values to measure each pool size with, 0 disabling the cache
+	private final String queryCacheSizes = System.getProperty("benchmark.queryCacheSizes", "0,64");
+
+	// Makes the seeded vehicles are spread across
+	private final String[] makes = {"Toyota", "Tesla", "Honda", "Ford", "BMW", "Audi", "Kia", "Mazda"};
+
+	/**
+	 * Measures the throughput of a mix of 80% id lookups, 15% make filters and 5% updates for each pool size and
+	 * statement cache size
+	 *
+	 * @throws Exception if a worker thread fails
+	 */
+	@Test
+	public void benchmarkPoolSizes() throws Exception {
+		System.out.printf("%-10s %-10s %-10s %-12s%n", "pool", "cache", "threads", "ops/sec");
+		for (String poolSize : poolSizes.split(",")) {
+			for (String queryCacheSize : queryCacheSizes.split(",")) {
+				double throughput = measure(Integer.parseInt(poolSize.trim()), Integer.parseInt(queryCacheSize.trim()));
+				System.out.printf("%-10s %-10s %-10d %-12.0f%n", poolSize.trim(), queryCacheSize.trim(), threads,
+						throughput);
+				assertTrue(throughput > 0);
+			}
+		}
+	}
+
+	/**
+	 * Seeds a fresh database behind a pool of the given size and measures the throughput of the query mix
+	 *
+	 * @param poolSize the maximum and minimum number of pooled connections
+	 * @param queryCacheSize the number of prepared statements H2 caches per session
+	 * @return the number of operations per second
+	 * @throws Exception if a worker thread fails
+	 */
+	private double measure(int poolSize, int queryCacheSize) throws Exception {
+		HikariConfig config = new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:mem:benchmark" + poolSize + "-" + queryCacheSize
+				+ ";QUERY_CACHE_SIZE=" + queryCacheSize);
+		config.setUsername("sa");
+		config.setPassword("password");
+		config.setMaximumPoolSize(poolSize);
+		config.setMinimumIdle(poolSize);
+
+		try (HikariDataSource dataSource = new HikariDataSource(config)) {
+			VehicleRepository repository = new VehicleRepository(
+					new JdbcTemplate(dataSource),
+					new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+			new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(dataSource);
+			for (int id = 0; id < vehicleCount; id++) {
+				repository.createVehicle(new Vehicle(id, 1950 + id % 100, makes[id % makes.length], "Model " + id));
+			}
+
+			LongAdder operations = new LongAdder();
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			List<Future<?>> workers = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				workers.add(executor.submit(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					while (System.nanoTime() < deadline) {
+						int roll = random.nextInt(100);
+						int id = random.nextInt(vehicleCount);
+						if (roll < 80) {
+							repository.getVehicleById(id);
+						} else if (roll < 95) {
+							repository.getVehiclesByMake(makes[random.nextInt(makes.length)]);
+						} else {
+							repository.updateVehicleYear(id, 1950 + random.nextInt(100));
+						}
+						operations.increment();
+					}
+				}));
+			}
+			for (Future<?> worker : workers) {
+				worker.get();
+			}
+			executor.shutdown();
+			return operations.sum() * 1000.0 / durationMillis;
+		}
+	}
+}
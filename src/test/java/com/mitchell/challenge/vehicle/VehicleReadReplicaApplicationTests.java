@@ -0,0 +1,12 @@
+package com.mitchell.challenge.vehicle;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs every endpoint test of the application with the read replica enabled, so reads are served from the replica
+ */
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:read-replica-app-test",
+		"vehicle.read-replica.enabled=true"})
+public class VehicleReadReplicaApplicationTests extends VehicleApplicationTests {
+}
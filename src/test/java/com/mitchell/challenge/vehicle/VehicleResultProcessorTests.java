@@ -0,0 +1,100 @@
+package com.mitchell.challenge.vehicle;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the result processor, run with a threshold of one so every call takes the fork-join path
+ */
+public class VehicleResultProcessorTests {
+
+	// Number of vehicles processed by each test
+	private static final int vehicleCount = 5000;
+
+	// Makes the vehicles are spread across
+	private static final String[] makes = {"Toyota", "Tesla", "Honda", "Ford"};
+
+	// The vehicles processed, in id order
+	private final List<Vehicle> vehicles = new ArrayList<>();
+
+	// The processor being tested, parallel from a single vehicle on
+	private VehicleResultProcessor processor;
+
+	/**
+	 * Creates the processor over a pool of four workers and the vehicles to process
+	 */
+	@BeforeEach
+	public void setUp() {
+		processor = new VehicleResultProcessor(4, 1);
+		Random random = new Random(42);
+		for (int id = 0; id < vehicleCount; id++) {
+			vehicles.add(new Vehicle(id, 1950 + random.nextInt(101), makes[random.nextInt(makes.length)],
+					"Model " + random.nextInt(50)));
+		}
+	}
+
+	/**
+	 * Shuts the pool of the processor down
+	 */
+	@AfterEach
+	public void tearDown() {
+		processor.close();
+	}
+
+	/**
+	 * Tries to sort by each field in both orders on the fork-join path, should match a sequential sort with ties
+	 * broken by id
+	 */
+	@Test
+	public void expectParallelSortMatchesSequential() {
+		Map<String, Comparator<Vehicle>> comparators = new LinkedHashMap<>();
+		comparators.put("id", Comparator.comparing(Vehicle::getId));
+		comparators.put("year", Comparator.comparing(Vehicle::getYear));
+		comparators.put("make", Comparator.comparing(Vehicle::getMake));
+		comparators.put("model", Comparator.comparing(Vehicle::getModel));
+
+		List<Vehicle> shuffled = new ArrayList<>(vehicles);
+		Collections.shuffle(shuffled, new Random(7));
+		comparators.forEach((field, comparator) -> {
+			List<Vehicle> ascending = new ArrayList<>(shuffled);
+			ascending.sort(comparator.thenComparing(Vehicle::getId));
+			assertEquals(ascending, processor.sort(shuffled, field, false));
+
+			List<Vehicle> descending = new ArrayList<>(shuffled);
+			descending.sort(comparator.thenComparing(Vehicle::getId).reversed());
+			assertEquals(descending, processor.sort(shuffled, field, true));
+		});
+	}
+
+	/**
+	 * Tries to group a parallel stream of the replica trie by make, dropping one make, should keep the id order within
+	 * each group and call the classifier once per vehicle
+	 */
+	@Test
+	public void expectParallelGroupInEncounterOrder() {
+		PersistentVehicleMap map = PersistentVehicleMap.empty();
+		for (Vehicle vehicle : vehicles) {
+			map = map.with(vehicle);
+		}
+		PersistentVehicleMap replica = map;
+		AtomicInteger classifications = new AtomicInteger();
+
+		SortedMap<String, List<Vehicle>> groups = processor.group(vehicleCount, replica::stream, vehicle -> {
+			classifications.incrementAndGet();
+			return "Ford".equals(vehicle.getMake()) ? null : vehicle.getMake();
+		});
+
+		assertEquals(vehicleCount, classifications.get());
+		assertEquals(Arrays.asList("Honda", "Tesla", "Toyota"), new ArrayList<>(groups.keySet()));
+		groups.forEach((make, group) -> assertEquals(
+				vehicles.stream().filter(vehicle -> make.equals(vehicle.getMake())).collect(Collectors.toList()),
+				group));
+	}
+}
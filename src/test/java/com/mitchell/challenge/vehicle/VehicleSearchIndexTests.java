@@ -0,0 +1,78 @@
+package com.mitchell.challenge.vehicle;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the search index fuzzy fallback over an index dominated by a single make
+ */
+public class VehicleSearchIndexTests {
+
+	// Number of vehicles sharing the common make
+	private static final int commonVehicles = 10000;
+
+	// The vehicle with the rare make
+	private final Vehicle tesla = new Vehicle(commonVehicles + 1, 2012, "Tesla", "Model S");
+
+	// The index being tested
+	private VehicleSearchIndex searchIndex;
+
+	/**
+	 * Indexes many vehicles of a common make along with a single vehicle of a rare make
+	 */
+	@BeforeEach
+	public void setUp() {
+		List<Vehicle> vehicles = new ArrayList<>();
+		for (int id = 1; id <= commonVehicles; id++) {
+			vehicles.add(new Vehicle(id, 2012, "Toyota", "Corolla"));
+		}
+		vehicles.add(tesla);
+		searchIndex = new VehicleSearchIndex();
+		searchIndex.rebuild(vehicles);
+	}
+
+	/**
+	 * Tries a misspelled rare make sharing a trigram with every common vehicle, should find the rare vehicle only
+	 */
+	@Test
+	public void expectRareFuzzyMatchAmongCommonTrigrams() {
+		assertEquals(Collections.singletonList(tesla), searchIndex.search("tesal", 10));
+	}
+
+	/**
+	 * Tries a misspelled common make, should return the limit of best matches in id order
+	 */
+	@Test
+	public void expectCommonFuzzyMatchesLimited() {
+		List<Vehicle> results = searchIndex.search("toyta", 3);
+		assertEquals(3, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(Integer.valueOf(i + 1), results.get(i).getId());
+		}
+	}
+
+	/**
+	 * Tries a misspelled common make over more vehicles than a fuzzy search scores, with ids not hashing in ascending
+	 * order, should return the lowest ids
+	 */
+	@Test
+	public void expectCappedFuzzyMatchesLowestIds() {
+		List<Vehicle> vehicles = new ArrayList<>();
+		for (int i = commonVehicles; i >= 1; i--) {
+			vehicles.add(new Vehicle(i * 100003, 2012, "Toyota", "Corolla"));
+		}
+		searchIndex.rebuild(vehicles);
+
+		List<Vehicle> results = searchIndex.search("toyta", 3);
+		assertEquals(3, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(Integer.valueOf((i + 1) * 100003), results.get(i).getId());
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.mitchell.challenge.vehicle;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the single-flight group, including sharing of results and errors and invalidation by writes
+ */
+public class VehicleSingleFlightTests {
+
+	// Number of identical calls made at once
+	private static final int callers = 8;
+
+	// The registry the coalesced call counter is read from
+	private SimpleMeterRegistry meterRegistry;
+
+	// The group being tested
+	private VehicleSingleFlight singleFlight;
+
+	// The threads making the calls
+	private ExecutorService executor;
+
+	/**
+	 * Creates an enabled group and the caller threads
+	 */
+	@BeforeEach
+	public void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		singleFlight = new VehicleSingleFlight(true, meterRegistry);
+		executor = Executors.newFixedThreadPool(callers);
+	}
+
+	/**
+	 * Stops the caller threads
+	 */
+	@AfterEach
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Tries identical calls while the first one is still running, should run the loader once and give every caller
+	 * its result
+	 *
+	 * @throws Exception If a caller fails or does not complete in time
+	 */
+	@Test
+	public void expectConcurrentCallsShareLoader() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		Vehicle vehicle = new Vehicle(1, 2012, "Toyota", "Corolla");
+
+		Future<Vehicle> leader = executor.submit(() -> singleFlight.execute(() -> {
+			loads.incrementAndGet();
+			await(release);
+			return vehicle;
+		}, "vehicle", 1));
+		while (loads.get() == 0) {
+			Thread.yield();
+		}
+
+		List<Future<Vehicle>> followers = new ArrayList<>();
+		for (int i = 1; i < callers; i++) {
+			followers.add(executor.submit(() -> singleFlight.execute(() -> {
+				loads.incrementAndGet();
+				return vehicle;
+			}, "vehicle", 1)));
+		}
+		awaitCoalesced(callers - 1);
+		release.countDown();
+
+		assertSame(vehicle, leader.get(5, TimeUnit.SECONDS));
+		for (Future<Vehicle> follower : followers) {
+			assertSame(vehicle, follower.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, loads.get());
+	}
+
+	/**
+	 * Tries a call after a write while an identical call started before the write is still running, should run a new
+	 * load instead of joining the stale one
+	 *
+	 * @throws Exception If a caller fails or does not complete in time
+	 */
+	@Test
+	public void expectWriteInvalidatesFlight() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger started = new AtomicInteger();
+		Vehicle before = new Vehicle(1, 2012, "Toyota", "Corolla");
+		Vehicle after = new Vehicle(1, 2013, "Toyota", "Corolla");
+
+		Future<Vehicle> stale = executor.submit(() -> singleFlight.execute(() -> {
+			started.incrementAndGet();
+			await(release);
+			return before;
+		}, "vehicle", 1));
+		while (started.get() == 0) {
+			Thread.yield();
+		}
+
+		singleFlight.vehicleUpdated(before, after);
+		assertSame(after, singleFlight.execute(() -> after, "vehicle", 1));
+
+		release.countDown();
+		assertSame(before, stale.get(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Tries a failing call joined by another caller, should rethrow the failure to both
+	 *
+	 * @throws Exception If a caller does not complete in time
+	 */
+	@Test
+	public void expectFailureSharedWithWaiters() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger started = new AtomicInteger();
+
+		Future<Object> leader = executor.submit(() -> singleFlight.execute(() -> {
+			started.incrementAndGet();
+			await(release);
+			throw new IllegalStateException("query failed");
+		}, "vehicles", null, "Toyota", null));
+		while (started.get() == 0) {
+			Thread.yield();
+		}
+		Future<Object> follower = executor.submit(() -> singleFlight.execute(() -> "unused",
+				"vehicles", null, "Toyota", null));
+		awaitCoalesced(1);
+		release.countDown();
+
+		ExecutionException leaderFailure = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+		assertTrue(leaderFailure.getCause() instanceof IllegalStateException);
+		ExecutionException followerFailure = assertThrows(ExecutionException.class, () ->
+				follower.get(5, TimeUnit.SECONDS));
+		assertTrue(followerFailure.getCause() instanceof IllegalStateException);
+	}
+
+	/**
+	 * Waits until the given number of callers have joined a flight, after which they get its result even if it
+	 * completes before they block on it
+	 *
+	 * @param count the number of coalesced calls to wait for
+	 */
+	private void awaitCoalesced(int count) {
+		while (meterRegistry.counter("vehicle.single-flight.coalesced").count() < count) {
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Waits for the latch, failing the loader if it is interrupted
+	 *
+	 * @param latch the latch to wait for
+	 */
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
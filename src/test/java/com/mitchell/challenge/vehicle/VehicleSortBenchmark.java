@@ -0,0 +1,81 @@
+package com.mitchell.challenge.vehicle;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark of the parallel filtering and sorting of large result sets across fork-join pool sizes.
+ *
+ * Excluded from the regular test task, run with "./gradlew benchmark". The dataset size, parallelism levels and
+ * repetitions can be changed with the benchmark.* system properties.
+ */
+@Tag("benchmark")
+public class VehicleSortBenchmark {
+
+	// Number of vehicles in the result set
+	private final int vehicleCount = Integer.getInteger("benchmark.vehicles", 2000000);
+
+	// Comma separated fork-join pool sizes to measure
+	private final String parallelisms = System.getProperty("benchmark.parallelisms", "1,2,4,8,16,32");
+
+	// Measured runs per parallelism, after one warm up run
+	private final int repetitions = Integer.getInteger("benchmark.repetitions", 5);
+
+	// Makes the vehicles are spread across
+	private final String[] makes = {"Toyota", "Tesla", "Honda", "Ford", "BMW", "Audi", "Kia", "Mazda"};
+
+	/**
+	 * Measures a replica scan with a make filter followed by a sort by model for each parallelism, and checks every
+	 * parallelism returns the same result as the sequential run
+	 */
+	@Test
+	public void benchmarkParallelFilterAndSort() {
+		Random random = new Random(42);
+		List<Vehicle> vehicles = new ArrayList<>(vehicleCount);
+		for (int id = 0; id < vehicleCount; id++) {
+			vehicles.add(new Vehicle(id, 1950 + random.nextInt(101), makes[random.nextInt(makes.length)],
+					"Model " + random.nextInt(10000)));
+		}
+
+		System.out.printf("%-12s %-12s %-12s %-10s%n", "parallelism", "filter ms", "sort ms", "speedup");
+		List<Vehicle> expected = null;
+		double baseline = 0;
+		for (String level : parallelisms.split(",")) {
+			int parallelism = Integer.parseInt(level.trim());
+			VehicleResultProcessor processor = new VehicleResultProcessor(parallelism, 0);
+			VehicleReadReplica replica = new VehicleReadReplica(processor);
+			replica.vehiclesLoaded(vehicles);
+
+			long filterNanos = 0;
+			long sortNanos = 0;
+			List<Vehicle> result = null;
+			for (int run = 0; run <= repetitions; run++) {
+				long start = System.nanoTime();
+				List<Vehicle> filtered = replica.getVehicles(null, "Tesla", null);
+				long filteredAt = System.nanoTime();
+				result = processor.sort(filtered, "model", false);
+				long sortedAt = System.nanoTime();
+				if (run > 0) {
+					filterNanos += filteredAt - start;
+					sortNanos += sortedAt - filteredAt;
+				}
+			}
+			processor.close();
+
+			double totalMillis = (filterNanos + sortNanos) / 1e6 / repetitions;
+			if (expected == null) {
+				expected = result;
+				baseline = totalMillis;
+			}
+			assertEquals(expected, result);
+			System.out.printf("%-12d %-12.1f %-12.1f %-10.2f%n", parallelism,
+					filterNanos / 1e6 / repetitions, sortNanos / 1e6 / repetitions, baseline / totalMillis);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.mitchell.challenge.vehicle;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Startup tests of the fast-boot profile, checking it boots without Hibernate and guarding its startup time against
+ * regressions
+ */
+public class VehicleStartupTests {
+
+	// The maximum startup time of the fast-boot profile, overridable with -Dbenchmark.startupMaxMillis
+	private static final long maxStartupMillis = Long.getLong("benchmark.startupMaxMillis", 10000);
+
+	/**
+	 * Tries to start the application in the fast-boot profile, should start without Hibernate and with a working
+	 * vehicle table created from the schema script
+	 */
+	@Test
+	public void expectFastBootWithoutHibernate() {
+		try (ConfigurableApplicationContext context = startFastBoot("fast-boot-startup")) {
+			assertEquals(0, context.getBeanNamesForType(EntityManagerFactory.class).length);
+
+			VehicleService vehicleService = context.getBean(VehicleService.class);
+			vehicleService.createVehicle(new Vehicle(1, 2012, "Toyota", "Corolla"));
+			List<Vehicle> vehicles = vehicleService.getVehicles(null, "Toyota", null, null, null);
+			assertEquals(1, vehicles.size());
+			assertEquals(new Vehicle(1, 2012, "Toyota", "Corolla"), vehicles.get(0));
+		}
+	}
+
+	/**
+	 * Tries to start the application in the fast-boot profile, should start within the budget. Tagged as a benchmark
+	 * so wall-clock time is not checked by the regular test task
+	 */
+	@Test
+	@Tag("benchmark")
+	public void expectFastBootWithinBudget() {
+		long start = System.nanoTime();
+		try (ConfigurableApplicationContext context = startFastBoot("fast-boot-budget")) {
+			long startupMillis = (System.nanoTime() - start) / 1000000;
+			assertTrue(startupMillis <= maxStartupMillis,
+					"Fast-boot startup took " + startupMillis + " ms, over the budget of " + maxStartupMillis + " ms");
+		}
+	}
+
+	/**
+	 * Starts the application in the fast-boot profile on a random port
+	 *
+	 * @param database the name of the in-memory database of the application
+	 * @return the context of the started application
+	 */
+	private ConfigurableApplicationContext startFastBoot(String database) {
+		return new SpringApplicationBuilder(VehicleApplication.class)
+				.profiles("fast-boot")
+				.run("--server.port=0", "--spring.datasource.url=jdbc:h2:mem:" + database);
+	}
+}
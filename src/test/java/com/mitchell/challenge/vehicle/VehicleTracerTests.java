@@ -0,0 +1,161 @@
+package com.mitchell.challenge.vehicle;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the tracer, including span nesting, sampling and the SQL spans of the tracing JdbcTemplate
+ */
+public class VehicleTracerTests {
+
+	// The file the traces are exported to
+	private Path traceFile;
+
+	// The tracer being tested, sampling no request unless forced
+	private VehicleTracer tracer;
+
+	// Mapper reading the exported traces
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	/**
+	 * Creates the tracer over an empty trace file
+	 *
+	 * @throws IOException if the trace file cannot be created
+	 */
+	@BeforeEach
+	public void setUp() throws IOException {
+		traceFile = Files.createTempFile("vehicle-traces", ".jsonl");
+		tracer = new VehicleTracer(0, "file", traceFile.toString());
+	}
+
+	/**
+	 * Closes the tracer and deletes the trace file
+	 *
+	 * @throws IOException if the trace file cannot be deleted
+	 */
+	@AfterEach
+	public void tearDown() throws IOException {
+		tracer.close();
+		Files.deleteIfExists(traceFile);
+	}
+
+	/**
+	 * Reads the traces exported so far
+	 *
+	 * @return the traces in export order
+	 * @throws IOException if the trace file cannot be read
+	 */
+	private Map<?, ?>[] readTraces() throws IOException {
+		List<String> lines = Files.readAllLines(traceFile, StandardCharsets.UTF_8);
+		Map<?, ?>[] traces = new Map<?, ?>[lines.size()];
+		for (int i = 0; i < lines.size(); i++) {
+			traces[i] = objectMapper.readValue(lines.get(i), Map.class);
+		}
+		return traces;
+	}
+
+	/**
+	 * Tries a request which is not sampled, should record and export nothing
+	 *
+	 * @throws IOException if the trace file cannot be read
+	 */
+	@Test
+	public void expectUnsampledRequestNotTraced() throws IOException {
+		assertNull(tracer.startTrace("GET /vehicles", false));
+		assertFalse(tracer.isTracing());
+		try (VehicleTracer.Span span = tracer.span("controller")) {
+			span.tag("query", "year=2012");
+		}
+		tracer.finishTrace(200);
+		assertEquals(0, readTraces().length);
+	}
+
+	/**
+	 * Tries a forced trace with nested spans, should export one trace whose spans point to their parents, closing the
+	 * spans left open when the trace finishes
+	 *
+	 * @throws IOException if the trace file cannot be read
+	 */
+	@Test
+	public void expectNestedSpansExported() throws IOException {
+		String traceId = tracer.startTrace("GET /vehicles", true);
+		assertNotNull(traceId);
+		assertTrue(tracer.isTracing());
+		VehicleTracer.Span controller = tracer.span("controller");
+		try (VehicleTracer.Span find = tracer.span("service.find")) {
+			find.tag("vehicles", 2);
+		}
+		tracer.span("serialize");
+		controller.close();
+		tracer.finishTrace(200);
+		assertFalse(tracer.isTracing());
+
+		Map<?, ?>[] traces = readTraces();
+		assertEquals(1, traces.length);
+		assertEquals(traceId, traces[0].get("traceId"));
+		assertEquals("GET /vehicles", traces[0].get("name"));
+		assertEquals(200, traces[0].get("status"));
+		List<?> spans = (List<?>) traces[0].get("spans");
+		assertEquals(3, spans.size());
+		Map<?, ?> controllerJson = (Map<?, ?>) spans.get(0);
+		Map<?, ?> findJson = (Map<?, ?>) spans.get(1);
+		Map<?, ?> serializeJson = (Map<?, ?>) spans.get(2);
+		assertEquals("controller", controllerJson.get("name"));
+		assertEquals(-1, controllerJson.get("parent"));
+		assertEquals("service.find", findJson.get("name"));
+		assertEquals(0, findJson.get("parent"));
+		assertEquals(2, findJson.get("vehicles"));
+		assertEquals("serialize", serializeJson.get("name"));
+		assertEquals(0, serializeJson.get("parent"));
+	}
+
+	/**
+	 * Tries repository calls through the tracing template, should record a span per statement with its SQL and rows
+	 *
+	 * @throws IOException if the trace file cannot be read
+	 */
+	@Test
+	public void expectSqlSpansWithRows() throws IOException {
+		HikariConfig config = new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:mem:tracer-test");
+		config.setUsername("sa");
+		config.setPassword("password");
+		try (HikariDataSource dataSource = new HikariDataSource(config)) {
+			VehicleRepository repository = new VehicleRepository(new TracingJdbcTemplate(dataSource, tracer),
+					new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+			new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(dataSource);
+			repository.createVehicle(new Vehicle(1, 2012, "Toyota", "Corolla"));
+			repository.createVehicle(new Vehicle(2, 2012, "Tesla", "S"));
+
+			tracer.startTrace("GET /vehicles", true);
+			assertEquals(2, repository.getVehiclesByYear(2012).size());
+			tracer.finishTrace(200);
+		}
+
+		Map<?, ?>[] traces = readTraces();
+		assertEquals(1, traces.length);
+		List<?> spans = (List<?>) traces[0].get("spans");
+		assertEquals(1, spans.size());
+		Map<?, ?> sql = (Map<?, ?>) spans.get(0);
+		assertEquals("sql", sql.get("name"));
+		assertTrue(((String) sql.get("sql")).contains("year"));
+		assertEquals(2, sql.get("rows"));
+	}
+}
@@ -0,0 +1,125 @@
+package com.mitchell.challenge.vehicle;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureDataJpa;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Endpoint tests of tracing, with no request sampled, forced tracing allowed and traces exported to a file
+ */
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:tracing-app-test",
+		"vehicle.tracing.sample-rate=0",
+		"vehicle.tracing.allow-forced=true",
+		"vehicle.tracing.exporter=file",
+		"vehicle.tracing.file=" + VehicleTracingApplicationTests.traceFile})
+@AutoConfigureDataJpa
+@AutoConfigureMockMvc
+public class VehicleTracingApplicationTests {
+
+	// The file the traces are appended to, traces of earlier runs are told apart by their id
+	static final String traceFile = "build/tracing-app-test/traces.jsonl";
+
+	// A mock of the mvc to do pick request to the back-end being tested
+	@Autowired
+	private MockMvc mockMvc;
+
+	// The tracer of the application, shared with the interceptor built by the tests
+	@Autowired
+	private VehicleTracer tracer;
+
+	// Mapper reading the exported traces
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	/**
+	 * Tries a request forcing a trace, should return the id of the trace in the X-Trace-Id header and export the
+	 * trace with a controller span followed by a serialize span, both directly under the request
+	 *
+	 * @throws Exception If the request fails to perform, or the trace is not exported as expected
+	 */
+	@Test
+	public void expectForcedTraceExported() throws Exception {
+		String traceId = mockMvc.perform(
+				get("/vehicles?make=Toyota")
+						.header(VehicleTracingInterceptor.traceHeader, "true"))
+				.andExpect(status().isOk())
+				.andExpect(header().exists(VehicleTracingInterceptor.traceIdHeader))
+				.andReturn().getResponse().getHeader(VehicleTracingInterceptor.traceIdHeader);
+
+		Map<?, ?> trace = readTrace(traceId);
+		assertEquals("GET /vehicles", trace.get("name"));
+		assertEquals(200, trace.get("status"));
+		List<?> spans = (List<?>) trace.get("spans");
+		Map<?, ?> controller = (Map<?, ?>) spans.get(0);
+		assertEquals("controller", controller.get("name"));
+		assertEquals(-1, controller.get("parent"));
+		assertEquals("make=Toyota", controller.get("query"));
+		Map<?, ?> serialize = (Map<?, ?>) spans.get(spans.size() - 1);
+		assertEquals("serialize", serialize.get("name"));
+		assertEquals(-1, serialize.get("parent"));
+	}
+
+	/**
+	 * Tries a request without the X-Trace header while no request is sampled, should not be traced
+	 *
+	 * @throws Exception If the request fails to perform, or a trace id is returned
+	 */
+	@Test
+	public void expectUnforcedRequestNotTraced() throws Exception {
+		mockMvc.perform(get("/vehicles"))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist(VehicleTracingInterceptor.traceIdHeader));
+	}
+
+	/**
+	 * Tries the X-Trace header on an interceptor which does not allow forced traces, should not be traced
+	 */
+	@Test
+	public void expectForcedTraceIgnoredWhenNotAllowed() {
+		VehicleTracingInterceptor interceptor = new VehicleTracingInterceptor(tracer, false);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/vehicles");
+		request.addHeader(VehicleTracingInterceptor.traceHeader, "true");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		assertTrue(interceptor.preHandle(request, response, null));
+		assertNull(response.getHeader(VehicleTracingInterceptor.traceIdHeader));
+		assertFalse(tracer.isTracing());
+	}
+
+	/**
+	 * Reads the exported trace with the given id
+	 *
+	 * @param traceId the id of the trace
+	 * @return the trace
+	 * @throws IOException if the trace file cannot be read
+	 */
+	private Map<?, ?> readTrace(String traceId) throws IOException {
+		Path path = Paths.get(traceFile);
+		for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+			Map<?, ?> trace = objectMapper.readValue(line, Map.class);
+			if (traceId.equals(trace.get("traceId"))) {
+				return trace;
+			}
+		}
+		fail("Trace " + traceId + " was not exported");
+		return null;
+	}
+}
@@ -0,0 +1,151 @@
+package com.mitchell.challenge.vehicle;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureDataJpa;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Collections;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Endpoint tests of write-behind mode, with a queue of one vehicle which is only flushed by the writes needing it
+ */
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:write-behind-app-test",
+		"vehicle.write-behind.enabled=true",
+		"vehicle.write-behind.queue-capacity=1",
+		"vehicle.write-behind.flush-interval-millis=3600000",
+		"vehicle.write-behind.retry-after-seconds=7"})
+@AutoConfigureDataJpa
+@AutoConfigureMockMvc
+@TestMethodOrder(OrderAnnotation.class)
+public class VehicleWriteBehindApplicationTests {
+
+	// The vehicle queued by the first test and left pending until a later write flushes it
+	private final Vehicle vehicle_1 = new Vehicle(1, 2012, "Toyota", "Corolla");
+
+	// A mock of the mvc to do pick request to the back-end being tested
+	@Autowired
+	private MockMvc mockMvc;
+
+	// Injected object used to convert object to JSON strings
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/**
+	 * Tries to create a vehicle then read it back while it is still queued, should be found by id and by filter
+	 *
+	 * @throws Exception If the requests fail to perform, or the vehicle is not read back
+	 */
+	@Test
+	@Order(1)
+	public void expectQueuedVehicleReadBack() throws Exception {
+		mockMvc.perform(
+				post("/vehicles")
+						.content(objectMapper.writeValueAsString(vehicle_1))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk());
+
+		mockMvc.perform(get("/vehicles/1"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(objectMapper.writeValueAsString(vehicle_1)));
+		mockMvc.perform(get("/vehicles?make=Toyota"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(objectMapper.writeValueAsString(Collections.singletonList(vehicle_1))));
+	}
+
+	/**
+	 * Tries to create a vehicle with the id of the queued vehicle, should conflict although it is not inserted yet
+	 *
+	 * @throws Exception If the request fails to perform, or the status is not conflict
+	 */
+	@Test
+	@Order(2)
+	public void expectQueuedIdConflict() throws Exception {
+		mockMvc.perform(
+				post("/vehicles")
+						.content(objectMapper.writeValueAsString(new Vehicle(1, 2014, "Tesla", "S")))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isConflict())
+				.andExpect(status().reason("ID of vehicle already exists in database"));
+	}
+
+	/**
+	 * Tries to create a vehicle while the queue is full, should be refused with 503 and Retry-After, then accepted
+	 * once an update has flushed the queue
+	 *
+	 * @throws Exception If the requests fail to perform, or the statuses and headers differ from the expected
+	 */
+	@Test
+	@Order(3)
+	public void expectFullQueueRetryLater() throws Exception {
+		Vehicle vehicle_2 = new Vehicle(2, 2014, "Tesla", "S");
+		mockMvc.perform(
+				post("/vehicles")
+						.content(objectMapper.writeValueAsString(vehicle_2))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isServiceUnavailable())
+				.andExpect(header().string(HttpHeaders.RETRY_AFTER, "7"))
+				.andExpect(status().reason("Too many pending writes, retry later"));
+
+		mockMvc.perform(
+				put("/vehicles")
+						.content(objectMapper.writeValueAsString(new Vehicle(1, null, null, "Camry")))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk());
+		mockMvc.perform(
+				post("/vehicles")
+						.content(objectMapper.writeValueAsString(vehicle_2))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk());
+		mockMvc.perform(get("/vehicles/1"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(objectMapper.writeValueAsString(new Vehicle(1, 2012, "Toyota", "Camry"))));
+	}
+
+	/**
+	 * Tries projections of the vehicle still queued and a create of an inserted id, should read the queued vehicle and
+	 * conflict without flushing, the queue staying full
+	 *
+	 * @throws Exception If the requests fail to perform, or the statuses and bodies differ from the expected
+	 */
+	@Test
+	@Order(4)
+	public void expectQueuedProjectionWithoutFlush() throws Exception {
+		mockMvc.perform(get("/vehicles/2?fields=make"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("{\"make\":\"Tesla\"}"));
+		mockMvc.perform(get("/vehicles?model=S&fields=id,model"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[{\"id\":2,\"model\":\"S\"}]"));
+
+		mockMvc.perform(
+				post("/vehicles")
+						.content(objectMapper.writeValueAsString(new Vehicle(1, 2014, "Tesla", "X")))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isConflict());
+		mockMvc.perform(
+				post("/vehicles")
+						.content(objectMapper.writeValueAsString(new Vehicle(3, 2014, "Tesla", "X")))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isServiceUnavailable());
+	}
+}
@@ -0,0 +1,151 @@
+package com.mitchell.challenge.vehicle;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the write-behind buffer, including the overlay of pending vehicles, flushing and backpressure
+ */
+public class VehicleWriteBehindTests {
+
+	// The database the buffer flushes to
+	private HikariDataSource dataSource;
+
+	// The repository over the database
+	private VehicleRepository repository;
+
+	// The buffer being tested, with a queue of two vehicles and no background flush during a test
+	private VehicleWriteBehind writeBehind;
+
+	// The vehicles the buffer reported as deleted to its listener
+	private final List<Vehicle> deletedVehicles = new ArrayList<>();
+
+	/**
+	 * Creates an empty database and the buffer over it
+	 */
+	@BeforeEach
+	public void setUp() {
+		HikariConfig config = new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:mem:write-behind-test");
+		config.setUsername("sa");
+		config.setPassword("password");
+		dataSource = new HikariDataSource(config);
+		repository = new VehicleRepository(new JdbcTemplate(dataSource),
+				new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+		new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")).execute(dataSource);
+		VehicleChangeListener listener = new VehicleChangeListener() {
+			@Override
+			public void vehiclesLoaded(Collection<Vehicle> vehicles) {
+			}
+
+			@Override
+			public void vehicleCreated(Vehicle vehicle) {
+			}
+
+			@Override
+			public void vehicleUpdated(Vehicle previous, Vehicle updated) {
+			}
+
+			@Override
+			public void vehicleDeleted(Vehicle vehicle) {
+				deletedVehicles.add(vehicle);
+			}
+		};
+		writeBehind = new VehicleWriteBehind(repository, 2, 100, 3600000, 1, Collections.singletonList(listener),
+				new SimpleMeterRegistry());
+	}
+
+	/**
+	 * Closes the buffer and the database so the next test starts empty
+	 */
+	@AfterEach
+	public void tearDown() {
+		writeBehind.close();
+		dataSource.close();
+	}
+
+	/**
+	 * Tries to queue a vehicle, should be visible in the overlay only until flushed to the database
+	 */
+	@Test
+	public void expectPendingUntilFlushed() {
+		Vehicle vehicle = new Vehicle(1, 2012, "Toyota", "Corolla");
+		assertTrue(writeBehind.enqueue(vehicle));
+		assertEquals(vehicle, writeBehind.getPending(1));
+		assertFalse(repository.isIdTaken(1));
+
+		writeBehind.flush();
+		assertNull(writeBehind.getPending(1));
+		assertEquals(vehicle, repository.getVehicleById(1));
+	}
+
+	/**
+	 * Tries to queue more vehicles than the queue holds, should refuse the extra vehicle and leave it out of the overlay
+	 */
+	@Test
+	public void expectFullQueueRefused() {
+		assertTrue(writeBehind.enqueue(new Vehicle(1, 2012, "Toyota", "Corolla")));
+		assertTrue(writeBehind.enqueue(new Vehicle(2, 2012, "Tesla", "S")));
+		assertFalse(writeBehind.enqueue(new Vehicle(3, 2013, "Honda", "Civic")));
+		assertNull(writeBehind.getPending(3));
+
+		writeBehind.flush();
+		assertTrue(writeBehind.enqueue(new Vehicle(3, 2013, "Honda", "Civic")));
+	}
+
+	/**
+	 * Tries to flush a vehicle whose id was taken behind the buffer's back, should insert the rest of the batch, report
+	 * the failed vehicle as deleted and count it
+	 */
+	@Test
+	public void expectFailedInsertCompensated() {
+		Vehicle existing = new Vehicle(1, 2010, "Honda", "Civic");
+		repository.createVehicle(existing);
+		Vehicle failed = new Vehicle(1, 2012, "Toyota", "Corolla");
+		Vehicle inserted = new Vehicle(2, 2012, "Tesla", "S");
+		assertTrue(writeBehind.enqueue(failed));
+		assertTrue(writeBehind.enqueue(inserted));
+
+		writeBehind.flush();
+		assertEquals(Collections.singletonList(failed), deletedVehicles);
+		assertEquals(1, writeBehind.getFailedInserts());
+		assertNull(writeBehind.getPending(1));
+		assertEquals(existing, repository.getVehicleById(1));
+		assertEquals(inserted, repository.getVehicleById(2));
+	}
+
+	/**
+	 * Tries to merge pending vehicles into a query result, should add the matching ones in id order without duplicating
+	 * vehicles already in the result
+	 */
+	@Test
+	public void expectPendingMergedInIdOrder() {
+		Vehicle vehicle_1 = new Vehicle(1, 2012, "Toyota", "Corolla");
+		Vehicle vehicle_2 = new Vehicle(2, 2012, "Tesla", "S");
+		Vehicle vehicle_3 = new Vehicle(3, 2013, "Toyota", "Camry");
+		Vehicle vehicle_4 = new Vehicle(4, 2012, "Toyota", "Prius");
+
+		List<Vehicle> merged = VehicleWriteBehind.merge(Arrays.asList(vehicle_1, vehicle_3),
+				Arrays.asList(vehicle_4, vehicle_2, vehicle_3), vehicle -> "Toyota".equals(vehicle.getMake()));
+		assertEquals(Arrays.asList(vehicle_1, vehicle_3, vehicle_4), merged);
+		assertEquals(Collections.singletonList(vehicle_1), VehicleWriteBehind.merge(
+				Collections.singletonList(vehicle_1), Collections.emptyList(), vehicle -> true));
+	}
+}